@@ -5,12 +5,18 @@ import net.imagej.ops.OpEnvironment;
 import net.imagej.ops.OpService;
 import net.imglib2.*;
 import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.cache.img.DiskCachedCellImgOptions;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
 import net.imglib2.converter.Converter;
 import net.imglib2.converter.Converters;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.iterator.LocalizingIntervalIterator;
 import net.imglib2.outofbounds.OutOfBoundsBorderFactory;
+import net.imglib2.trainable_segmention.pixel_feature.filter.fft.Convolution;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.ComplexType;
 import net.imglib2.type.numeric.IntegerType;
@@ -27,6 +33,7 @@ import weka.core.DenseInstance;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
@@ -37,10 +44,9 @@ import java.util.stream.Stream;
  */
 public class RevampUtils {
 
-	private static final float[] SOBEL_FILTER_X_VALUES = {1f,2f,1f,0f,0f,0f,-1f,-2f,-1f};
-	private static final RandomAccessibleInterval<FloatType> SOBEL_FILTER_X = ArrayImgs.floats(SOBEL_FILTER_X_VALUES, 3, 3);
-	private static final float[] SOBEL_FILTER_Y_VALUES = {1f,0f,-1f,2f,0f,-2f,1f,0f,-1f};
-	private static final RandomAccessibleInterval<FloatType> SOBEL_FILTER_Y = ArrayImgs.floats(SOBEL_FILTER_Y_VALUES, 3, 3);
+	// NB: The Sobel filters are separable, one kernel per dimension.
+	private static final float[][] SOBEL_FILTER_X = {{1f,2f,1f},{1f,0f,-1f}};
+	private static final float[][] SOBEL_FILTER_Y = {{1f,0f,-1f},{1f,2f,1f}};
 
 	public static <T> List<RandomAccessibleInterval<T>> slices(RandomAccessibleInterval<T> output) {
 		int axis = output.numDimensions() - 1;
@@ -77,6 +83,50 @@ public class RevampUtils {
 		return new FinalInterval(mins, maxs);
 	}
 
+	/**
+	 * Splits the interval into tiles of the given size. Tiles at the upper
+	 * border of the interval might be smaller.
+	 */
+	public static List<Interval> tiles(Interval interval, int[] tileSize) {
+		int n = interval.numDimensions();
+		long[] gridSize = new long[n];
+		for (int d = 0; d < n; d++)
+			gridSize[d] = (interval.dimension(d) + tileSize[d] - 1) / tileSize[d];
+		List<Interval> tiles = new ArrayList<>();
+		LocalizingIntervalIterator grid = new LocalizingIntervalIterator(gridSize);
+		long[] min = new long[n];
+		long[] max = new long[n];
+		while (grid.hasNext()) {
+			grid.fwd();
+			for (int d = 0; d < n; d++) {
+				min[d] = interval.min(d) + grid.getLongPosition(d) * tileSize[d];
+				max[d] = Math.min(min[d] + tileSize[d] - 1, interval.max(d));
+			}
+			tiles.add(new FinalInterval(min, max));
+		}
+		return tiles;
+	}
+
+	/**
+	 * Returns a lazily evaluated image, that covers the given interval. The
+	 * image is split into cells of the given size. The content of a cell is
+	 * calculated by the loader, when the cell is accessed for the first time.
+	 * At most maxCachedCells cells are kept in memory, the least recently used
+	 * cells are evicted and recalculated on demand.
+	 */
+	public static <T extends NativeType<T>> RandomAccessibleInterval<T> lazyImg(Interval interval, int[] cellSize, T type,
+			long maxCachedCells, Consumer<RandomAccessibleInterval<T>> loader)
+	{
+		long[] offset = Intervals.minAsLongArray(interval);
+		ReadOnlyCachedCellImgOptions options = ReadOnlyCachedCellImgOptions.options()
+				.cellDimensions(cellSize)
+				.cacheType(DiskCachedCellImgOptions.CacheType.BOUNDED)
+				.maxCacheSize(maxCachedCells);
+		Img<T> img = new ReadOnlyCachedCellImgFactory(options).create(Intervals.dimensionsAsLongArray(interval), type,
+				cell -> loader.accept(Views.translate(cell, offset)));
+		return Views.translate(img, offset);
+	}
+
 	public static Interval removeLastDimension(Interval in) {
 		long[] min = removeLast(Intervals.minAsLongArray(in));
 		long[] max = removeLast(Intervals.maxAsLongArray(in));
@@ -111,13 +161,17 @@ public class RevampUtils {
 	}
 
 	public static RandomAccessibleInterval<FloatType> deriveX(OpEnvironment ops, RandomAccessible<FloatType> input, Interval outputInterval) {
-		if(outputInterval.numDimensions() != 2)
-			throw new IllegalArgumentException("Only two dimensional images supported.");
 		RandomAccessibleInterval<FloatType> output = ops.create().img(outputInterval, new FloatType());
-		ops.filter().convolve(output, input, SOBEL_FILTER_X);
+		deriveX(ops, input, output);
 		return output;
 	}
 
+	public static void deriveX(OpEnvironment ops, RandomAccessible<FloatType> input, RandomAccessibleInterval<FloatType> output) {
+		if(output.numDimensions() != 2)
+			throw new IllegalArgumentException("Only two dimensional images supported.");
+		Convolution.convolveSeparable(input, SOBEL_FILTER_X, output, null);
+	}
+
 	public static Interval deriveXRequiredInput(Interval output) {
 		if(output.numDimensions() != 2)
 			throw new IllegalArgumentException("Only two dimensional images supported.");
@@ -125,13 +179,17 @@ public class RevampUtils {
 	}
 
 	public static RandomAccessibleInterval<FloatType> deriveY(OpEnvironment ops, RandomAccessible<FloatType> input, Interval outputInterval) {
-		if(outputInterval.numDimensions() != 2)
-			throw new IllegalArgumentException("Only two dimensional images supported.");
 		RandomAccessibleInterval<FloatType> output = ops.create().img(outputInterval, new FloatType());
-		ops.filter().convolve(output, input, SOBEL_FILTER_Y);
+		deriveY(ops, input, output);
 		return output;
 	}
 
+	public static void deriveY(OpEnvironment ops, RandomAccessible<FloatType> input, RandomAccessibleInterval<FloatType> output) {
+		if(output.numDimensions() != 2)
+			throw new IllegalArgumentException("Only two dimensional images supported.");
+		Convolution.convolveSeparable(input, SOBEL_FILTER_Y, output, null);
+	}
+
 	public static Interval deriveYRequiredInput(Interval output) {
 		if(output.numDimensions() != 2)
 			throw new IllegalArgumentException("Only two dimensional images supported.");
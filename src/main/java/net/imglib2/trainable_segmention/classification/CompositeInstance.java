@@ -20,13 +20,27 @@ public class CompositeInstance implements Instance
 
 	private final int classIndex;
 
+	private final int[] sourceIndices;
+
 
 	public CompositeInstance(final Composite<? extends RealType<?>> source, final Attribute[] attributes )
+	{
+		this( source, attributes, null );
+	}
+
+	/**
+	 * @param sourceIndices Maps an attribute index to the index in the source
+	 *                      composite, where the attribute value is stored.
+	 *                      Null means identity, a negative index means the
+	 *                      value is missing.
+	 */
+	public CompositeInstance(final Composite<? extends RealType<?>> source, final Attribute[] attributes, final int[] sourceIndices )
 	{
 		super();
 		this.source = source;
 		this.attributes = attributes;
 		this.classIndex = attributes.length - 1;
+		this.sourceIndices = sourceIndices;
 	}
 
 	public void setSource( final Composite<? extends RealType<?>> source )
@@ -43,7 +57,10 @@ public class CompositeInstance implements Instance
 	@Override
 	public double value( final int attIndex )
 	{
-		return source.get( attIndex ).getRealDouble();
+		if ( sourceIndices == null )
+			return source.get( attIndex ).getRealDouble();
+		final int index = sourceIndices[ attIndex ];
+		return index < 0 ? Double.NaN : source.get( index ).getRealDouble();
 	}
 
 	@Override
@@ -12,6 +12,7 @@ import net.imglib2.*;
 import net.imglib2.trainable_segmention.pixel_feature.calculator.FeatureCalculator;
 import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSettings;
 import net.imglib2.trainable_segmention.RevampUtils;
+import net.imglib2.trainable_segmention.utils.OutputFactory;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.type.NativeType;
@@ -47,11 +48,18 @@ public class Segmenter {
 
 	private final OpEnvironment ops;
 
+	private OutputFactory outputFactory;
+
+	private FeatureCalculator inferenceFeatures = null;
+
+	private int[] sourceIndices = null;
+
 	public Segmenter(OpEnvironment ops, List<String> classNames, FeatureCalculator features, Classifier classifier) {
 		this.ops = Objects.requireNonNull(ops);
 		this.classNames = Collections.unmodifiableList(classNames);
 		this.features = Objects.requireNonNull(features);
 		this.classifier = Objects.requireNonNull(classifier);
+		this.outputFactory = OutputFactory.onHeap(ops);
 	}
 
 	public Segmenter(OpEnvironment ops, List<String> classNames, FeatureSettings features, Classifier classifier) {
@@ -64,6 +72,17 @@ public class Segmenter {
 
 	public FeatureSettings settings() { return features.settings(); }
 
+	/**
+	 * Sets the {@link OutputFactory} used to create the images returned by
+	 * {@link #segment(RandomAccessibleInterval)} and
+	 * {@link #predict(RandomAccessibleInterval)}. The feature stacks are
+	 * created by the {@link FeatureCalculator}, see
+	 * {@link FeatureCalculator#setOutputFactory(OutputFactory)}.
+	 */
+	public void setOutputFactory(OutputFactory outputFactory) {
+		this.outputFactory = Objects.requireNonNull(outputFactory);
+	}
+
 	public Img<UnsignedByteType> segment(RandomAccessibleInterval<?> image) {
 		return segment(image, new UnsignedByteType());
 	}
@@ -72,7 +91,7 @@ public class Segmenter {
 		Objects.requireNonNull(image);
 		Objects.requireNonNull(type);
 		Interval outputInterval = features.outputIntervalFromInput(image);
-		Img<T> result = ops.create().img(outputInterval, type);
+		Img<T> result = outputFactory.create(outputInterval, type);
 		segment(result, Views.extendBorder(image));
 		return result;
 	}
@@ -80,14 +99,17 @@ public class Segmenter {
 	public void segment(RandomAccessibleInterval<? extends IntegerType<?>> out, RandomAccessible<?> image) {
 		Objects.requireNonNull(out);
 		Objects.requireNonNull(image);
-		RandomAccessibleInterval<FloatType> featureValues = features.apply(image, out);
-		ops.run(Ops.Map.class, out, Views.collapseReal(featureValues), pixelClassificationOp());
+		FeatureCalculator inference = inferenceFeatures();
+		for (Interval tile : tiles(inference, out)) {
+			RandomAccessibleInterval<FloatType> featureValues = inference.apply(image, tile);
+			ops.run(Ops.Map.class, Views.interval(out, tile), Views.collapseReal(featureValues), new PixelClassifierOp(sourceIndices));
+		}
 	}
 
 	public RandomAccessibleInterval<? extends Composite<? extends RealType<?>>> predict(RandomAccessibleInterval<?> image) {
 		Objects.requireNonNull(image);
 		Interval outputInterval = features.outputIntervalFromInput(image);
-		Img<FloatType> img = ops.create().img(RevampUtils.appendDimensionToInterval(
+		Img<FloatType> img = outputFactory.create(RevampUtils.appendDimensionToInterval(
 				outputInterval, 0, classNames.size()), new FloatType());
 		CompositeIntervalView< FloatType, RealComposite< FloatType > >
 				collapsed = Views.collapseReal(img);
@@ -98,16 +120,96 @@ public class Segmenter {
 	public void predict(RandomAccessibleInterval<? extends Composite<? extends RealType<?>>> out, RandomAccessible<?> image) {
 		Objects.requireNonNull(out);
 		Objects.requireNonNull(image);
-		RandomAccessibleInterval<FloatType> featureValues = features.apply(image, out);
-		ops.run(Ops.Map.class, out, Views.collapseReal(featureValues), pixelPredictionOp());
+		FeatureCalculator inference = inferenceFeatures();
+		for (Interval tile : tiles(inference, out)) {
+			RandomAccessibleInterval<FloatType> featureValues = inference.apply(image, tile);
+			ops.run(Ops.Map.class, Views.interval(out, tile), Views.collapseReal(featureValues), new PixelPredictionOp(sourceIndices));
+		}
+	}
+
+	/**
+	 * If the {@link FeatureCalculator} is in tiled mode, the image is segmented
+	 * tile by tile. Such that the feature stack is never allocated for the
+	 * entire image.
+	 */
+	private static List<Interval> tiles(FeatureCalculator features, Interval interval) {
+		int[] tileSize = features.tileSize();
+		return tileSize == null ? Collections.singletonList(interval) : RevampUtils.tiles(interval, tileSize);
+	}
+
+	/**
+	 * Returns a lazily evaluated segmentation. The image is segmented block by
+	 * block, when a block is accessed for the first time.
+	 *
+	 * @see FeatureCalculator#applyLazy
+	 */
+	public RandomAccessibleInterval<UnsignedByteType> segmentLazy(RandomAccessibleInterval<?> image, int[] cellSize, long maxCachedCells) {
+		Objects.requireNonNull(image);
+		Interval outputInterval = features.outputIntervalFromInput(image);
+		RandomAccessible<?> extended = Views.extendBorder(image);
+		return RevampUtils.lazyImg(outputInterval, cellSize, new UnsignedByteType(), maxCachedCells,
+				cell -> segment(cell, extended));
+	}
+
+	/**
+	 * Returns a lazily evaluated prediction. The class probabilities are
+	 * calculated block by block, when a block is accessed for the first time.
+	 *
+	 * @see FeatureCalculator#applyLazy
+	 */
+	public RandomAccessibleInterval<? extends Composite<? extends RealType<?>>> predictLazy(RandomAccessibleInterval<?> image, int[] cellSize, long maxCachedCells) {
+		Objects.requireNonNull(image);
+		Interval outputInterval = features.outputIntervalFromInput(image);
+		RandomAccessible<?> extended = Views.extendBorder(image);
+		RandomAccessibleInterval<FloatType> probabilities = RevampUtils.lazyImg(
+				RevampUtils.appendDimensionToInterval(outputInterval, 0, classNames.size() - 1),
+				RevampUtils.extend(cellSize, classNames.size()), new FloatType(), maxCachedCells,
+				cell -> predict(Views.collapseReal(cell), extended));
+		return Views.collapseReal(probabilities);
 	}
 
 	public UnaryHybridCF<Composite<? extends RealType<?>>, Composite<? extends RealType<?>>> pixelPredictionOp() {
-		return new PixelPredictionOp();
+		return new PixelPredictionOp(null);
 	}
 
 	public UnaryHybridCF<Composite<? extends RealType<?>>, IntegerType<?>> pixelClassificationOp() {
-		return new PixelClassifierOp();
+		return new PixelClassifierOp(null);
+	}
+
+	/**
+	 * Returns the {@link FeatureCalculator} used for segmentation. It only
+	 * calculates the features, that are used by the trained classifier. The
+	 * options of {@link #features()} are applied.
+	 */
+	private synchronized FeatureCalculator inferenceFeatures() {
+		if (inferenceFeatures == null)
+			initInferenceFeatures();
+		inferenceFeatures.copyOptions(features);
+		return inferenceFeatures;
+	}
+
+	private void initInferenceFeatures() {
+		Optional<BitSet> used = UsedAttributes.find(classifier);
+		if (!used.isPresent() || used.get().isEmpty()) {
+			inferenceFeatures = features;
+			sourceIndices = null;
+			return;
+		}
+		FeatureCalculator reduced = features.reduce(used.get()::get);
+		List<String> labels = features.attributeLabels();
+		List<String> reducedLabels = reduced.attributeLabels();
+		// NB: the last attribute is the class attribute
+		int[] indices = new int[labels.size() + 1];
+		for (int i = 0; i < labels.size(); i++)
+			indices[i] = reducedLabels.indexOf(labels.get(i));
+		indices[labels.size()] = -1;
+		inferenceFeatures = reduced;
+		sourceIndices = indices;
+	}
+
+	private synchronized void resetInferenceFeatures() {
+		inferenceFeatures = null;
+		sourceIndices = null;
 	}
 
 	public List<String> classNames() {
@@ -162,6 +264,7 @@ public class Segmenter {
 			RevampUtils.wrapException( () ->
  				classifier.buildClassifier(instances)
 			);
+			resetInferenceFeatures();
 
 		}
 	}
@@ -184,11 +287,18 @@ public class Segmenter {
 
 	private class PixelClassifierOp extends AbstractUnaryHybridCF<Composite<? extends RealType<?>>, IntegerType<?>> {
 
-		CompositeInstance compositeInstance = new CompositeInstance(null, attributesAsArray());
+		final int[] sourceIndices;
+
+		final CompositeInstance compositeInstance;
+
+		PixelClassifierOp(int[] sourceIndices) {
+			this.sourceIndices = sourceIndices;
+			this.compositeInstance = new CompositeInstance(null, attributesAsArray(), sourceIndices);
+		}
 
 		@Override
 		public UnaryHybridCF<Composite<? extends RealType<?>>, IntegerType<?>> getIndependentInstance() {
-			return new PixelClassifierOp();
+			return new PixelClassifierOp(sourceIndices);
 		}
 
 		@Override
@@ -206,11 +316,18 @@ public class Segmenter {
 
 	private class PixelPredictionOp extends AbstractUnaryHybridCF<Composite<? extends RealType<?>>, Composite<? extends RealType<?>>> {
 
-		CompositeInstance compositeInstance = new CompositeInstance(null, attributesAsArray());
+		final int[] sourceIndices;
+
+		final CompositeInstance compositeInstance;
+
+		PixelPredictionOp(int[] sourceIndices) {
+			this.sourceIndices = sourceIndices;
+			this.compositeInstance = new CompositeInstance(null, attributesAsArray(), sourceIndices);
+		}
 
 		@Override
 		public UnaryHybridCF<Composite<? extends RealType<?>>, Composite<? extends RealType<?>>> getIndependentInstance() {
-			return new PixelPredictionOp();
+			return new PixelPredictionOp(sourceIndices);
 		}
 
 		@Override
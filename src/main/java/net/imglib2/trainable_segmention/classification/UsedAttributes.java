@@ -0,0 +1,75 @@
+package net.imglib2.trainable_segmention.classification;
+
+import hr.irb.fastRandomForest.FastRandomForest;
+import weka.classifiers.Classifier;
+
+import java.lang.reflect.Field;
+import java.util.BitSet;
+import java.util.Optional;
+
+/**
+ * Finds the attributes a trained classifier actually uses.
+ * <p>
+ * A trained {@link FastRandomForest} often never splits on a good share of
+ * the attributes. These features don't need to be calculated for
+ * segmentation. FastRandomForest doesn't expose it's trees, therefore they
+ * are read via reflection.
+ *
+ * @author Matthias Arzt
+ */
+public class UsedAttributes {
+
+	private UsedAttributes() {
+		// prevent from instantiation
+	}
+
+	/**
+	 * Returns the indices of the attributes used by the classifier, or an
+	 * empty optional if this is unknown. This is the case for classifiers
+	 * other than {@link FastRandomForest}, or untrained classifiers.
+	 */
+	public static Optional<BitSet> find(Classifier classifier) {
+		if (!(classifier instanceof FastRandomForest))
+			return Optional.empty();
+		try {
+			Object bagger = getField(classifier, "m_bagger");
+			if (bagger == null)
+				return Optional.empty();
+			Object[] trees = (Object[]) getField(bagger, "m_Classifiers");
+			if (trees == null)
+				return Optional.empty();
+			BitSet used = new BitSet();
+			for (Object tree : trees)
+				addUsedAttributes(used, tree);
+			return Optional.of(used);
+		}
+		catch (ReflectiveOperationException | ClassCastException e) {
+			return Optional.empty();
+		}
+	}
+
+	private static void addUsedAttributes(BitSet used, Object tree) throws ReflectiveOperationException {
+		if (tree == null)
+			return;
+		Object[] successors = (Object[]) getField(tree, "m_Successors");
+		if (successors == null || successors.length == 0)
+			return;
+		used.set((Integer) getField(tree, "m_Attribute"));
+		for (Object successor : successors)
+			addUsedAttributes(used, successor);
+	}
+
+	private static Object getField(Object object, String name) throws ReflectiveOperationException {
+		for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+			try {
+				Field field = c.getDeclaredField(name);
+				field.setAccessible(true);
+				return field.get(object);
+			}
+			catch (NoSuchFieldException e) {
+				// continue with super class
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+}
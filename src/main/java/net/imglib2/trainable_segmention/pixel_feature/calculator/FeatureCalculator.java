@@ -1,31 +1,76 @@
 package net.imglib2.trainable_segmention.pixel_feature.calculator;
 
 import net.imagej.ops.OpEnvironment;
+import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.Converters;
 import net.imglib2.img.Img;
+import net.imglib2.loops.LoopBuilder;
 import net.imglib2.trainable_segmention.RevampUtils;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureJoiner;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeaturePlan;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureTask;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
+import net.imglib2.trainable_segmention.pixel_feature.filter.gauss.PyramidGauss;
+import net.imglib2.trainable_segmention.pixel_feature.filter.gauss.RecursiveGauss;
 import net.imglib2.trainable_segmention.pixel_feature.settings.ChannelSetting;
+import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSetting;
 import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSettings;
+import net.imglib2.trainable_segmention.utils.OutputFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class FeatureCalculator {
 
+	/**
+	 * Number of pixels of the tiles, in which reduced precision feature stacks
+	 * are calculated, if no tile size is set.
+	 */
+	private static final long STORAGE_TILE_PIXELS = 1 << 18;
+
 	private final FeatureJoiner joiner;
 
 	private final FeatureSettings settings;
 
 	private final InputPreprocessor preprocessor;
 
+	private int[] tileSize = null;
+
+	private boolean interleaved = false;
+
+	private FeatureStorage storage = FeatureStorage.FLOAT;
+
+	private OutputFactory outputFactory = null;
+
+	private double pyramidTolerance = 0;
+
+	private double recursiveGaussThreshold = Double.POSITIVE_INFINITY;
+
+	private boolean fusedDerivatives = false;
+
+	private double steerableGaborTolerance = 0;
+
+	private boolean exactMedian = false;
+
 	public FeatureCalculator(OpEnvironment ops, FeatureSettings settings) {
 		this.settings = settings;
 		List<FeatureOp> featureOps = settings.features().stream()
@@ -60,15 +105,312 @@ public class FeatureCalculator {
 		return joiner.count() * channelCount();
 	}
 
+	/**
+	 * Enables the tiled mode. The output interval is split into tiles of the
+	 * given size, and the features are calculated tile by tile. The
+	 * intermediate results, like blurred images, are then only allocated for
+	 * one tile at a time, and the peak memory scales with the tile size rather
+	 * than with the image size. For each tile, the input pixels given by
+	 * {@link #requiredInput(Interval)} are copied into a buffer once, and all
+	 * features read from this buffer.
+	 *
+	 * @param tileSize Size of a tile, one value per dimension, or null to
+	 *                 disable the tiled mode.
+	 */
+	public void setTileSize(int... tileSize) {
+		if(tileSize != null && tileSize.length != settings.globals().numDimensions())
+			throw new IllegalArgumentException("Tile size must have " + settings.globals().numDimensions() + " dimensions.");
+		if(tileSize != null && Arrays.stream(tileSize).anyMatch(size -> size < 1))
+			throw new IllegalArgumentException("Tile size must be positive.");
+		this.tileSize = tileSize == null ? null : tileSize.clone();
+	}
+
+	public int[] tileSize() {
+		return tileSize == null ? null : tileSize.clone();
+	}
+
+	/**
+	 * If set to true, the feature stacks returned by
+	 * {@link #apply(RandomAccessible, Interval)} store the features of a pixel
+	 * next to each other in memory. The feature axis is still the last axis of
+	 * the returned image, but reading all features of one pixel, as done by
+	 * the classifier, accesses one contiguous block of memory.
+	 */
+	public void setInterleaved(boolean interleaved) {
+		this.interleaved = interleaved;
+	}
+
+	public boolean isInterleaved() {
+		return interleaved;
+	}
+
+	/**
+	 * Sets how the feature stacks returned by
+	 * {@link #apply(RandomAccessible, Interval)} are stored. Reduced precision
+	 * stacks are decoded to float on read.
+	 * <p>
+	 * The reduced precision stacks are calculated tile by tile, with the tiles
+	 * of {@link #setTileSize}, or smaller tiles if no tile size is set, so
+	 * the full stack is never held as float. The quantized modes need the
+	 * range of each feature, and therefore calculate the features twice.
+	 */
+	public void setStorage(FeatureStorage storage) {
+		this.storage = Objects.requireNonNull(storage);
+	}
+
+	public FeatureStorage storage() {
+		return storage;
+	}
+
+	/**
+	 * Sets the {@link OutputFactory} used to create the feature stacks
+	 * returned by {@link #apply(RandomAccessible, Interval)}. By default, the
+	 * feature stacks are created on the java heap.
+	 */
+	public void setOutputFactory(OutputFactory outputFactory) {
+		this.outputFactory = outputFactory;
+	}
+
+	public OutputFactory outputFactory() {
+		return outputFactory != null ? outputFactory : OutputFactory.onHeap(ops());
+	}
+
+	/**
+	 * Enables the pyramid mode. Blurred images with a large sigma are then
+	 * calculated on a downsampled image and interpolated back to full
+	 * resolution (see {@link PyramidGauss}). This speeds up the gauss,
+	 * difference of gaussians, gradient and Hessian features for large
+	 * sigmas. The downsampling factor is chosen per sigma, such that the
+	 * relative error of the blurred image stays below the given tolerance.
+	 * Derivatives of the blurred images have a larger error.
+	 *
+	 * @param pyramidTolerance Accepted relative error, for example 0.01. Zero
+	 *                         (the default) disables the pyramid mode.
+	 */
+	public void setPyramidTolerance(double pyramidTolerance) {
+		if(pyramidTolerance < 0)
+			throw new IllegalArgumentException("Pyramid tolerance must not be negative.");
+		this.pyramidTolerance = pyramidTolerance;
+	}
+
+	public double pyramidTolerance() {
+		return pyramidTolerance;
+	}
+
+	/**
+	 * Blurred images with a sigma of at least the given threshold are
+	 * calculated with a recursive filter (see {@link RecursiveGauss}). It's
+	 * cost per pixel doesn't grow with sigma, but the result differs from the
+	 * default {@link net.imglib2.algorithm.gauss3.Gauss3} by about 1% of the
+	 * image contrast. The threshold applies to the sigma of the blur, which
+	 * is 0.4 times the sigma of the feature. By default the threshold is
+	 * infinite, which disables the recursive filter.
+	 */
+	public void setRecursiveGaussThreshold(double recursiveGaussThreshold) {
+		if(recursiveGaussThreshold < 0.5)
+			throw new IllegalArgumentException("Recursive gauss threshold must be at least 0.5.");
+		this.recursiveGaussThreshold = recursiveGaussThreshold;
+	}
+
+	public double recursiveGaussThreshold() {
+		return recursiveGaussThreshold;
+	}
+
+	/**
+	 * If set to true, the 2D Hessian features calculate the second
+	 * derivatives in one pass with combined gauss and derivative kernels. No
+	 * blurred image and no derivative images are allocated. The result equals
+	 * the default calculation up to rounding errors. The fused calculation
+	 * reads the input image directly, the pyramid mode and the recursive gauss
+	 * don't apply to it.
+	 */
+	public void setFusedDerivatives(boolean fusedDerivatives) {
+		this.fusedDerivatives = fusedDerivatives;
+	}
+
+	public boolean isFusedDerivatives() {
+		return fusedDerivatives;
+	}
+
+	/**
+	 * Enables the approximate Gabor mode. The rotated Gabor kernels of a
+	 * feature are approximated by a few basis kernels, such that the
+	 * relative L2 error of every kernel stays below the given tolerance.
+	 * Only the basis kernels are convolved with the image, the response of
+	 * every angle is a per pixel linear combination of the basis responses.
+	 * With a tolerance of 0.1 about five instead of ten convolutions are
+	 * needed, and the PSNR of the Gabor features stays above 40 dB. The legacy
+	 * normalized Gabor features are always calculated exactly.
+	 *
+	 * @param steerableGaborTolerance Accepted relative error of the kernels,
+	 *                                for example 0.1. Zero (the default)
+	 *                                disables the approximation.
+	 */
+	public void setSteerableGaborTolerance(double steerableGaborTolerance) {
+		if(steerableGaborTolerance < 0)
+			throw new IllegalArgumentException("Steerable Gabor tolerance must not be negative.");
+		this.steerableGaborTolerance = steerableGaborTolerance;
+	}
+
+	public double steerableGaborTolerance() {
+		return steerableGaborTolerance;
+	}
+
+	/**
+	 * The median features slide a histogram over the image. By default the
+	 * values are rounded to 16 significant bits, which limits the size of the
+	 * histogram for float images. Integers up to 65536 are kept exactly, and
+	 * the rounding doesn't depend on the tiling. If set to true, the
+	 * histogram uses the exact values instead, which gives the exact median,
+	 * but needs more memory and is slower for float images.
+	 */
+	public void setExactMedian(boolean exactMedian) {
+		this.exactMedian = exactMedian;
+	}
+
+	public boolean isExactMedian() {
+		return exactMedian;
+	}
+
+	/**
+	 * Sets the {@link ExecutorService} used to calculate the features in
+	 * parallel. By default the common fork join pool is used.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		joiner.setExecutor(executor);
+	}
+
+	/**
+	 * Sets the maximal number of features, that are calculated in parallel.
+	 * The budget is shared by all channels. The default is one, which means
+	 * sequential calculation.
+	 */
+	public void setNumThreads(int numThreads) {
+		joiner.setNumThreads(numThreads);
+	}
+
+	/**
+	 * Returns the interval of the input image, that is needed to calculate the
+	 * features for the given output interval. The channel axis of the input
+	 * image is not included.
+	 */
+	public Interval requiredInput(Interval outputInterval) {
+		Interval result = joiner.requiredInput(outputInterval);
+		if(pyramidTolerance > 0)
+			for(Intermediate intermediate : plan().intermediates())
+				if(!intermediate.isFFT())
+					result = Intervals.union(result,
+							FeatureInput.gaussRequiredInput(outputInterval, intermediate.sigma(), pyramidTolerance));
+		return result;
+	}
+
+	/**
+	 * Returns the execution plan of the features. It lists the intermediate
+	 * results (blurred images, derivatives) that are shared between the
+	 * features, and how many calculations are saved by sharing them. The plan
+	 * is executed once per channel.
+	 */
+	public FeaturePlan plan() {
+		return joiner.plan();
+	}
+
 	public List<String> attributeLabels() {
 		return prepend(settings.globals().channelSetting().channels(), joiner.attributeLabels());
 	}
 
+	/**
+	 * Calculates the features for all channels. If the number of threads is
+	 * greater than one, the channels and the features are calculated in
+	 * parallel, sharing the same thread budget.
+	 */
 	public void apply(RandomAccessible<?> input, List<RandomAccessibleInterval<FloatType>> output) {
+		if(output.size() != count())
+			throw new IllegalArgumentException();
+		if(output.isEmpty())
+			return;
+		if(tileSize == null) {
+			applyToTile(preprocessor.getChannels(input), output);
+			return;
+		}
 		List<RandomAccessible<FloatType>> channels = preprocessor.getChannels(input);
+		for(Interval tile : RevampUtils.tiles(output.get(0), tileSize)) {
+			Interval required = requiredInput(tile);
+			List<RandomAccessible<FloatType>> buffered = channels.stream()
+					.map(channel -> buffer(channel, required)).collect(Collectors.toList());
+			applyToTile(buffered, output.stream().map(o -> Views.interval(o, tile)).collect(Collectors.toList()));
+		}
+	}
+
+	private void applyToTile(List<RandomAccessible<FloatType>> channels, List<RandomAccessibleInterval<FloatType>> output) {
 		List<List<RandomAccessibleInterval<FloatType>>> outputs = split(output, channels.size());
-		for (int i = 0; i < channels.size(); i++)
-			joiner.apply(channels.get(i), outputs.get(i));
+		List<FeatureTask> tasks = new ArrayList<>();
+		for (int i = 0; i < channels.size(); i++) {
+			FeatureInput channel = new FeatureInput(ops(), channels.get(i), output.get(0));
+			channel.setPyramidTolerance(pyramidTolerance);
+			channel.setRecursiveGaussThreshold(recursiveGaussThreshold);
+			channel.setFusedDerivatives(fusedDerivatives);
+			channel.setSteerableGaborTolerance(steerableGaborTolerance);
+			channel.setExactMedian(exactMedian);
+			channel.setExecutor(joiner.executor(), joiner.numThreads());
+			tasks.addAll(joiner.tasks(channel, outputs.get(i)));
+		}
+		FeatureTask.runAll(tasks, joiner.executor(), joiner.numThreads());
+	}
+
+	/**
+	 * Copies the given interval of the channel into an image. Pixels outside
+	 * the interval don't influence the features, but some features (like FFT
+	 * based convolution) access them, so the buffer is extended.
+	 */
+	private RandomAccessible<FloatType> buffer(RandomAccessible<FloatType> channel, Interval interval) {
+		Img<FloatType> buffer = ops().create().img(interval, new FloatType());
+		LoopBuilder.setImages(Views.interval(channel, interval), buffer).forEachPixel((i, o) -> o.set(i));
+		return Views.extendBorder(buffer);
+	}
+
+	/**
+	 * Returns a {@link FeatureCalculator} that only calculates the features
+	 * needed for the given attributes. Groups are split into their single
+	 * features, and features whose outputs are all unused are left out. The
+	 * options are copied, see {@link #copyOptions(FeatureCalculator)}.
+	 *
+	 * @param isUsed Tells for an attribute index of this calculator, if it is
+	 *               used.
+	 */
+	public FeatureCalculator reduce(IntPredicate isUsed) {
+		int channels = channelCount();
+		List<FeatureSetting> used = new ArrayList<>();
+		int featureIndex = 0;
+		for (FeatureOp feature : joiner.leafFeatures()) {
+			int start = featureIndex * channels;
+			int end = (featureIndex + feature.count()) * channels;
+			if (IntStream.range(start, end).anyMatch(isUsed))
+				used.add(FeatureSetting.fromOp(feature));
+			featureIndex += feature.count();
+		}
+		FeatureCalculator reduced = new FeatureCalculator(ops(), new FeatureSettings(settings.globals(), used));
+		reduced.copyOptions(this);
+		return reduced;
+	}
+
+	/**
+	 * Copies the options (executor, number of threads, tile size, layout,
+	 * storage, output factory, pyramid tolerance, recursive gauss threshold,
+	 * fused derivatives, steerable Gabor tolerance and exact median) from the
+	 * given calculator.
+	 */
+	public void copyOptions(FeatureCalculator other) {
+		joiner.setExecutor(other.joiner.executor());
+		joiner.setNumThreads(other.joiner.numThreads());
+		tileSize = other.tileSize;
+		interleaved = other.interleaved;
+		storage = other.storage;
+		outputFactory = other.outputFactory;
+		pyramidTolerance = other.pyramidTolerance;
+		recursiveGaussThreshold = other.recursiveGaussThreshold;
+		fusedDerivatives = other.fusedDerivatives;
+		steerableGaborTolerance = other.steerableGaborTolerance;
+		exactMedian = other.exactMedian;
 	}
 
 	public RandomAccessibleInterval<FloatType> apply(RandomAccessibleInterval<?> image) {
@@ -78,11 +420,219 @@ public class FeatureCalculator {
 	public RandomAccessibleInterval<FloatType> apply(RandomAccessible<?> extendedImage, Interval interval) {
 		if(interval.numDimensions() != settings().globals().numDimensions())
 			throw new IllegalArgumentException("Wrong dimension of the output interval.");
-		Img<FloatType> result = ops().create().img(RevampUtils.appendDimensionToInterval(interval, 0, count() - 1), new FloatType());
+		switch (storage) {
+			case HALF_FLOAT:
+				return applyHalfFloat(extendedImage, interval);
+			case UNSIGNED_SHORT:
+				return applyQuantized(extendedImage, interval, new UnsignedShortType());
+			case UNSIGNED_BYTE:
+				return applyQuantized(extendedImage, interval, new UnsignedByteType());
+			default:
+				return applyFloat(extendedImage, interval);
+		}
+	}
+
+	private RandomAccessibleInterval<FloatType> applyFloat(RandomAccessible<?> extendedImage, Interval interval) {
+		RandomAccessibleInterval<FloatType> result = createStack(interval, new FloatType());
 		apply(extendedImage, RevampUtils.slices(result));
 		return result;
 	}
 
+	private RandomAccessibleInterval<FloatType> applyHalfFloat(RandomAccessible<?> extendedImage, Interval interval) {
+		RandomAccessibleInterval<UnsignedShortType> result = createStack(interval, new UnsignedShortType());
+		List<RandomAccessibleInterval<UnsignedShortType>> encoded = RevampUtils.slices(result);
+		for (Interval tile : storageTiles(interval)) {
+			List<RandomAccessibleInterval<FloatType>> features = applyToScratch(extendedImage, tile);
+			for (int i = 0; i < features.size(); i++)
+				LoopBuilder.setImages(features.get(i), Views.interval(encoded.get(i), tile)).forEachPixel(
+						(f, e) -> e.set(HalfFloat.fromFloatSaturated(f.get()) & 0xffff));
+		}
+		Converter<UnsignedShortType, FloatType> decoder = (e, f) -> f.set(HalfFloat.toFloat((short) e.get()));
+		return Views.stack(encoded.stream()
+				.map(slice -> Converters.convert(slice, decoder, new FloatType()))
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * The features are calculated twice, tile by tile: The first pass finds
+	 * the range of each feature, the second pass encodes the features.
+	 */
+	private <T extends IntegerType<T> & NativeType<T>> RandomAccessibleInterval<FloatType> applyQuantized(
+			RandomAccessible<?> extendedImage, Interval interval, T type)
+	{
+		List<Interval> tiles = storageTiles(interval);
+		float[][] ranges = new float[count()][];
+		for (int i = 0; i < ranges.length; i++)
+			ranges[i] = new float[] { Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY };
+		for (Interval tile : tiles) {
+			List<RandomAccessibleInterval<FloatType>> features = applyToScratch(extendedImage, tile);
+			for (int i = 0; i < features.size(); i++)
+				updateFiniteRange(features.get(i), ranges[i]);
+		}
+		double maxLevel = type.getMaxValue();
+		float[] mins = new float[ranges.length];
+		float[] scales = new float[ranges.length];
+		for (int i = 0; i < ranges.length; i++) {
+			float[] range = ranges[i][0] <= ranges[i][1] ? ranges[i] : new float[] { 0, 0 };
+			mins[i] = range[0];
+			scales[i] = (float) ((range[1] - range[0]) / maxLevel);
+		}
+		List<RandomAccessibleInterval<T>> encoded = RevampUtils.slices(createStack(interval, type));
+		for (Interval tile : tiles) {
+			List<RandomAccessibleInterval<FloatType>> features = applyToScratch(extendedImage, tile);
+			for (int i = 0; i < features.size(); i++) {
+				float min = mins[i];
+				float inverseScale = scales[i] > 0 ? 1 / scales[i] : 0;
+				LoopBuilder.setImages(features.get(i), Views.interval(encoded.get(i), tile)).forEachPixel(
+						(f, e) -> e.setInteger(quantize(f.get(), min, inverseScale, maxLevel)));
+			}
+		}
+		List<RandomAccessibleInterval<FloatType>> decoded = new ArrayList<>();
+		for (int i = 0; i < encoded.size(); i++) {
+			float min = mins[i];
+			float scale = scales[i];
+			Converter<T, FloatType> decoder = (e, f) -> f.set(e.getInteger() * scale + min);
+			decoded.add(Converters.convert(encoded.get(i), decoder, new FloatType()));
+		}
+		return Views.stack(decoded);
+	}
+
+	/**
+	 * Returns the tiles, in which the reduced precision feature stacks are
+	 * calculated. These are the tiles of {@link #setTileSize}, or tiles of
+	 * about {@link #STORAGE_TILE_PIXELS} pixels if no tile size is set. Tiling
+	 * doesn't change the features.
+	 */
+	private List<Interval> storageTiles(Interval interval) {
+		if (tileSize != null)
+			return RevampUtils.tiles(interval, tileSize);
+		int n = interval.numDimensions();
+		int[] size = new int[n];
+		Arrays.fill(size, (int) Math.round(Math.pow(STORAGE_TILE_PIXELS, 1.0 / n)));
+		return RevampUtils.tiles(interval, size);
+	}
+
+	/**
+	 * Calculates the features of the tile into a temporary image on the
+	 * heap. Only the encoded stack is created by the output factory.
+	 */
+	private List<RandomAccessibleInterval<FloatType>> applyToScratch(RandomAccessible<?> extendedImage, Interval tile) {
+		Img<FloatType> scratch = ops().create().img(RevampUtils.appendDimensionToInterval(tile, 0, count() - 1), new FloatType());
+		List<RandomAccessibleInterval<FloatType>> features = RevampUtils.slices(scratch);
+		apply(extendedImage, features);
+		return features;
+	}
+
+	private static long quantize(float value, float min, float inverseScale, double maxLevel) {
+		if (Float.isNaN(value))
+			return 0;
+		return (long) Math.max(0, Math.min(maxLevel, Math.round((value - min) * inverseScale)));
+	}
+
+	/**
+	 * Extends the range { min, max } by the finite values of the image.
+	 */
+	private static void updateFiniteRange(RandomAccessibleInterval<FloatType> image, float[] range) {
+		for (FloatType pixel : Views.iterable(image)) {
+			float value = pixel.get();
+			if (Float.isInfinite(value) || Float.isNaN(value))
+				continue;
+			range[0] = Math.min(range[0], value);
+			range[1] = Math.max(range[1], value);
+		}
+	}
+
+	/**
+	 * Creates an image for the feature stack, with the feature axis as last
+	 * axis. In interleaved mode, the features of a pixel are stored next to
+	 * each other in memory.
+	 */
+	private <T extends NativeType<T>> RandomAccessibleInterval<T> createStack(Interval interval, T type) {
+		if (!interleaved)
+			return outputFactory().create(RevampUtils.appendDimensionToInterval(interval, 0, count() - 1), type);
+		int n = interval.numDimensions();
+		long[] min = new long[n + 1];
+		long[] max = new long[n + 1];
+		max[0] = count() - 1;
+		for (int d = 0; d < n; d++) {
+			min[d + 1] = interval.min(d);
+			max[d + 1] = interval.max(d);
+		}
+		Img<T> img = outputFactory().create(new FinalInterval(min, max), type);
+		return Views.moveAxis(img, 0, n);
+	}
+
+	/**
+	 * Updates a feature stack in place, after the input image changed within
+	 * the dirty interval. Only the features of pixels, whose required input
+	 * (see {@link #requiredInput(Interval)}) intersects the dirty interval, are
+	 * recalculated.
+	 *
+	 * @param featureStack  Feature stack previously calculated for the
+	 *                      extended image, must be writable.
+	 * @param dirtyInterval Interval of the input image, that changed.
+	 * @return The spatial interval of the feature stack, that was updated.
+	 * The interval is empty, if the feature stack was not affected.
+	 * @throws IllegalArgumentException if the storage isn't
+	 *                                  {@link FeatureStorage#FLOAT}. The
+	 *                                  reduced precision feature stacks are
+	 *                                  read-only views, writing to them would
+	 *                                  have no effect.
+	 */
+	public Interval update(RandomAccessible<?> extendedImage, RandomAccessibleInterval<FloatType> featureStack, Interval dirtyInterval) {
+		if (storage != FeatureStorage.FLOAT)
+			throw new IllegalArgumentException("Only feature stacks with storage FLOAT can be updated, but the storage is " + storage + ".");
+		Interval stackInterval = RevampUtils.removeLastDimension(featureStack);
+		Interval affected = Intervals.intersect(stackInterval, affectedOutput(dirtyInterval));
+		if (!Intervals.isEmpty(affected)) {
+			Interval interval = RevampUtils.appendDimensionToInterval(affected, featureStack.min(affected.numDimensions()),
+					featureStack.max(affected.numDimensions()));
+			apply(extendedImage, RevampUtils.slices(Views.interval(featureStack, interval)));
+		}
+		return affected;
+	}
+
+	/**
+	 * Returns the output interval, whose features depend on the given input
+	 * interval.
+	 */
+	private Interval affectedOutput(Interval inputInterval) {
+		// NB: If the output [x, x] requires the input [x - a, x + b], then the
+		// input y influences the output [y - b, y + a].
+		Interval required = requiredInput(inputInterval);
+		int n = inputInterval.numDimensions();
+		long[] min = new long[n];
+		long[] max = new long[n];
+		for (int d = 0; d < n; d++) {
+			long a = inputInterval.min(d) - required.min(d);
+			long b = required.max(d) - inputInterval.max(d);
+			min[d] = inputInterval.min(d) - b;
+			max[d] = inputInterval.max(d) + a;
+		}
+		return new FinalInterval(min, max);
+	}
+
+	/**
+	 * Returns a lazily evaluated feature stack. The features are calculated
+	 * block by block, when a block is accessed for the first time. A block
+	 * contains all features for a spatial cell of the given size.
+	 *
+	 * @param cellSize       Spatial size of a block.
+	 * @param maxCachedCells Maximal number of blocks kept in memory, least
+	 *                       recently used blocks are evicted.
+	 */
+	public RandomAccessibleInterval<FloatType> applyLazy(RandomAccessible<?> extendedImage, Interval interval,
+			int[] cellSize, long maxCachedCells)
+	{
+		if(interval.numDimensions() != settings().globals().numDimensions())
+			throw new IllegalArgumentException("Wrong dimension of the output interval.");
+		if(cellSize.length != interval.numDimensions())
+			throw new IllegalArgumentException("Cell size must have " + interval.numDimensions() + " dimensions.");
+		return RevampUtils.lazyImg(RevampUtils.appendDimensionToInterval(interval, 0, count() - 1),
+				RevampUtils.extend(cellSize, count()), new FloatType(), maxCachedCells,
+				cell -> apply(extendedImage, RevampUtils.slices(cell)));
+	}
+
 	public Interval outputIntervalFromInput(RandomAccessibleInterval<?> image) {
 		return preprocessor.outputIntervalFromInput(image);
 	}
@@ -0,0 +1,39 @@
+package net.imglib2.trainable_segmention.pixel_feature.calculator;
+
+/**
+ * Specifies how {@link FeatureCalculator} stores the feature stacks it
+ * returns. The features are always calculated as float, and decoded back to
+ * float on read.
+ * <p>
+ * The accuracies given below for the quantized storages are the PSNR
+ * relative to {@link #FLOAT}, that FeatureStorageTest requires on nuclei.tif
+ * with the default 2D features.
+ *
+ * @author Matthias Arzt
+ */
+public enum FeatureStorage {
+
+	/**
+	 * 32 bit float, 4 bytes per feature and pixel, no loss of precision.
+	 */
+	FLOAT,
+
+	/**
+	 * 16 bit half precision float. The relative error is below 0.05%, the
+	 * range is limited to +-65504. Larger finite values, like some Hessian
+	 * features, are saturated to +-65504. 2 bytes per feature and pixel.
+	 */
+	HALF_FLOAT,
+
+	/**
+	 * 16 bit unsigned integer, with the range of each feature mapped onto
+	 * 0 ... 65535. 2 bytes per feature and pixel, at least 80dB PSNR.
+	 */
+	UNSIGNED_SHORT,
+
+	/**
+	 * 8 bit unsigned integer, with the range of each feature mapped onto
+	 * 0 ... 255. 1 byte per feature and pixel, at least 35dB PSNR.
+	 */
+	UNSIGNED_BYTE
+}
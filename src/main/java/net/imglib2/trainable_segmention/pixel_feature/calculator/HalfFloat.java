@@ -0,0 +1,71 @@
+package net.imglib2.trainable_segmention.pixel_feature.calculator;
+
+/**
+ * Conversion between float and IEEE 754 half precision floating point
+ * numbers, stored as short.
+ *
+ * @author Matthias Arzt
+ */
+public class HalfFloat {
+
+	/**
+	 * Largest finite half precision value.
+	 */
+	public static final float MAX_VALUE = 65504;
+
+	private HalfFloat() {
+		// prevent from instantiation
+	}
+
+	/**
+	 * Converts a float to half precision, rounding to the nearest value (ties
+	 * to even). Values that are too large become infinity.
+	 */
+	public static short fromFloat(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xff) - 112;
+		int mantissa = bits & 0x7fffff;
+		if (exponent == 0xff - 112) // infinity or NaN
+			return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+		if (exponent >= 0x1f) // overflow
+			return (short) (sign | 0x7c00);
+		if (exponent <= 0) { // subnormal or zero
+			if (exponent < -10)
+				return (short) sign;
+			return (short) (sign | round(mantissa | 0x800000, 14 - exponent));
+		}
+		// NB: if rounding overflows the mantissa, it correctly increments the exponent
+		return (short) (sign | ((exponent << 10) + round(mantissa, 13)));
+	}
+
+	/**
+	 * Same as {@link #fromFloat(float)}, but finite values that are too large
+	 * become +-{@link #MAX_VALUE} instead of infinity.
+	 */
+	public static short fromFloatSaturated(float value) {
+		if (!Float.isInfinite(value) && Math.abs(value) > MAX_VALUE)
+			return fromFloat(value > 0 ? MAX_VALUE : -MAX_VALUE);
+		return fromFloat(value);
+	}
+
+	public static float toFloat(short half) {
+		int sign = (half & 0x8000) << 16;
+		int exponent = (half >>> 10) & 0x1f;
+		int mantissa = half & 0x3ff;
+		if (exponent == 0x1f) // infinity or NaN
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		if (exponent == 0) { // subnormal or zero
+			float value = mantissa * 0x1p-24f;
+			return sign == 0 ? value : -value;
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+	}
+
+	private static int round(int value, int shift) {
+		int result = value >> shift;
+		int roundBit = 1 << (shift - 1);
+		boolean roundUp = (value & roundBit) != 0 && (value & (3 * roundBit - 1)) != 0;
+		return roundUp ? result + 1 : result;
+	}
+}
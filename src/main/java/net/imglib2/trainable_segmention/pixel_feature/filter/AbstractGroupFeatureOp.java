@@ -1,5 +1,6 @@
 package net.imglib2.trainable_segmention.pixel_feature.filter;
 
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSetting;
@@ -29,6 +30,16 @@ public abstract class AbstractGroupFeatureOp extends AbstractFeatureOp {
 		return featureGroup.count();
 	}
 
+	@Override
+	public double cost() {
+		return featureGroup.cost();
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return featureGroup.requiredInput(outputInterval);
+	}
+
 	@Override
 	public List<String> attributeLabels() {
 		return featureGroup.attributeLabels();
@@ -38,4 +49,9 @@ public abstract class AbstractGroupFeatureOp extends AbstractFeatureOp {
 	public void apply(RandomAccessible<FloatType> input, List<RandomAccessibleInterval<FloatType>> output) {
 		featureGroup.apply(input, output);
 	}
+
+	@Override
+	public void apply(FeatureInput input, List<RandomAccessibleInterval<FloatType>> output) {
+		featureGroup.apply(input, output);
+	}
 }
@@ -0,0 +1,336 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter;
+
+import net.imagej.ops.OpEnvironment;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.trainable_segmention.RevampUtils;
+import net.imglib2.trainable_segmention.pixel_feature.filter.fft.InputFFT;
+import net.imglib2.trainable_segmention.pixel_feature.filter.gauss.PyramidGauss;
+import net.imglib2.trainable_segmention.pixel_feature.filter.gauss.RecursiveGauss;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The input of a {@link FeatureOp}: one channel of the image, together with a
+ * cache for intermediate results, like gaussian blurred images.
+ * <p>
+ * A {@link FeatureJoiner} creates one {@link FeatureInput} per channel and
+ * pass, and shares it between all it's features. Blurred images and their
+ * derivatives are therefore only calculated once per sigma. The joiner
+ * {@link #retain retains} the {@link Intermediate}s used by each feature, and
+ * {@link #release releases} them when the feature is done. An intermediate
+ * is removed from the cache, as soon as it's last user released it.
+ *
+ * @author Matthias Arzt
+ */
+public class FeatureInput {
+
+	/**
+	 * Blurred images are cached for the target interval expanded by this border,
+	 * which is enough for the first and second derivatives used by the features.
+	 */
+	private static final long CACHE_BORDER = 2;
+
+	private final OpEnvironment ops;
+
+	private final RandomAccessible<FloatType> original;
+
+	private final Interval targetInterval;
+
+	private final Interval cacheInterval;
+
+	private final Interval derivativeCacheInterval;
+
+	private final Map<Intermediate, Lazy<RandomAccessibleInterval<FloatType>>> cache = new ConcurrentHashMap<>();
+
+	private final Map<Intermediate, Lazy<InputFFT>> ffts = new ConcurrentHashMap<>();
+
+	private final Map<Intermediate, AtomicInteger> uses = new ConcurrentHashMap<>();
+
+	/**
+	 * Largest border of the {@link Intermediate#fft} intermediates retained,
+	 * since the transforms were last removed from the cache.
+	 */
+	private final AtomicLong fftBorder = new AtomicLong();
+
+	private double pyramidTolerance = 0;
+
+	private double recursiveGaussThreshold = Double.POSITIVE_INFINITY;
+
+	private boolean fusedDerivatives = false;
+
+	private double steerableGaborTolerance = 0;
+
+	private boolean exactMedian = false;
+
+	private ExecutorService executor = null;
+
+	private int numThreads = 1;
+
+	public FeatureInput(OpEnvironment ops, RandomAccessible<FloatType> original, Interval targetInterval) {
+		this.ops = ops;
+		this.original = original;
+		this.targetInterval = new FinalInterval(targetInterval);
+		this.cacheInterval = Intervals.expand(targetInterval, CACHE_BORDER);
+		this.derivativeCacheInterval = Intervals.expand(targetInterval, CACHE_BORDER - 1);
+	}
+
+	/**
+	 * Allows blurred images with large sigmas to be calculated on a
+	 * downsampled image, see {@link PyramidGauss}. The tolerance is the
+	 * accepted relative error of the blurred images, zero (the default)
+	 * disables downsampling.
+	 */
+	public void setPyramidTolerance(double pyramidTolerance) {
+		this.pyramidTolerance = pyramidTolerance;
+	}
+
+	/**
+	 * Blurred images with a sigma of at least the given threshold are
+	 * calculated with {@link RecursiveGauss}, whose cost doesn't grow with
+	 * sigma. By default the threshold is infinite, and all blurred images are
+	 * calculated with {@link net.imglib2.algorithm.gauss3.Gauss3}.
+	 */
+	public void setRecursiveGaussThreshold(double recursiveGaussThreshold) {
+		this.recursiveGaussThreshold = recursiveGaussThreshold;
+	}
+
+	/**
+	 * If true, features that support it calculate their derivatives with
+	 * combined gauss and derivative kernels directly from the original image,
+	 * rather than from the cached blurred images.
+	 */
+	public void setFusedDerivatives(boolean fusedDerivatives) {
+		this.fusedDerivatives = fusedDerivatives;
+	}
+
+	public boolean fusedDerivatives() {
+		return fusedDerivatives;
+	}
+
+	/**
+	 * Accepted relative error of the Gabor kernels, when they are
+	 * approximated by a steerable basis. Zero (the default) means that the
+	 * Gabor features are calculated exactly.
+	 */
+	public void setSteerableGaborTolerance(double steerableGaborTolerance) {
+		this.steerableGaborTolerance = steerableGaborTolerance;
+	}
+
+	public double steerableGaborTolerance() {
+		return steerableGaborTolerance;
+	}
+
+	/**
+	 * If true, the median features never quantize the input image, see
+	 * {@link net.imglib2.trainable_segmention.pixel_feature.calculator.FeatureCalculator#setExactMedian}.
+	 */
+	public void setExactMedian(boolean exactMedian) {
+		this.exactMedian = exactMedian;
+	}
+
+	public boolean exactMedian() {
+		return exactMedian;
+	}
+
+	/**
+	 * Executor and number of threads, that features may use to parallelize
+	 * the calculation of a single feature, see {@link FeatureTask#runAll}.
+	 */
+	public void setExecutor(ExecutorService executor, int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive, but is " + numThreads);
+		this.executor = executor;
+		this.numThreads = numThreads;
+	}
+
+	public ExecutorService executor() {
+		return executor;
+	}
+
+	public int numThreads() {
+		return numThreads;
+	}
+
+	public RandomAccessible<FloatType> original() {
+		return original;
+	}
+
+	public Interval targetInterval() {
+		return targetInterval;
+	}
+
+	/**
+	 * Returns the original image blurred with the given sigma, on the given
+	 * interval. The blurred image is cached, if the interval lies within the
+	 * target interval expanded by two pixels.
+	 */
+	public RandomAccessibleInterval<FloatType> gauss(double sigma, Interval interval) {
+		return cached(Intermediate.gauss(sigma), cacheInterval, interval, i -> calculateGauss(sigma, i));
+	}
+
+	/**
+	 * Returns the Sobel derivative in X direction of the image blurred with the
+	 * given sigma. It's cached, if the interval lies within the target interval
+	 * expanded by one pixel. Only two dimensional images are supported.
+	 */
+	public RandomAccessibleInterval<FloatType> sobelX(double sigma, Interval interval) {
+		return cached(Intermediate.sobelX(sigma), derivativeCacheInterval, interval,
+				i -> RevampUtils.deriveX(ops, gauss(sigma, RevampUtils.deriveXRequiredInput(i)), i));
+	}
+
+	/**
+	 * Returns the Sobel derivative in Y direction of the image blurred with the
+	 * given sigma. It's cached, if the interval lies within the target interval
+	 * expanded by one pixel. Only two dimensional images are supported.
+	 */
+	public RandomAccessibleInterval<FloatType> sobelY(double sigma, Interval interval) {
+		return cached(Intermediate.sobelY(sigma), derivativeCacheInterval, interval,
+				i -> RevampUtils.deriveY(ops, gauss(sigma, RevampUtils.deriveYRequiredInput(i)), i));
+	}
+
+	/**
+	 * Returns the Fourier transform of the original image, for convolutions
+	 * with kernels up to the given border on the target interval. The
+	 * transform is padded for the largest border of all the
+	 * {@link Intermediate#fft} intermediates, that were retained since the
+	 * transforms were last removed from the cache. The border is therefore
+	 * fixed when the features are planned, and doesn't depend on the order in
+	 * which the features finish. A cached transform with a larger border is
+	 * returned, if there is one.
+	 */
+	public InputFFT fft(long border) {
+		for (Map.Entry<Intermediate, Lazy<InputFFT>> entry : ffts.entrySet())
+			if (entry.getKey().border() >= border)
+				return entry.getValue().get();
+		long sharedBorder = fftBorder.accumulateAndGet(border, Math::max);
+		return ffts.computeIfAbsent(Intermediate.fft(sharedBorder),
+				k -> new Lazy<>(() -> new InputFFT(original, targetInterval, sharedBorder, executor))).get();
+	}
+
+	private RandomAccessibleInterval<FloatType> cached(Intermediate key, Interval cachedInterval, Interval interval,
+			Function<Interval, RandomAccessibleInterval<FloatType>> calculate)
+	{
+		if (!contains(cachedInterval, interval))
+			return calculate.apply(interval);
+		RandomAccessibleInterval<FloatType> result = cache.computeIfAbsent(key,
+				k -> new Lazy<>(() -> calculate.apply(cachedInterval))).get();
+		return Views.interval(result, interval);
+	}
+
+	/**
+	 * Announces that the given intermediates, and the intermediates they
+	 * depend on, will be requested. Each call must be followed by a call to
+	 * {@link #release} with the same intermediates.
+	 */
+	public void retain(Collection<Intermediate> intermediates) {
+		for (Intermediate intermediate : Intermediate.withDependencies(intermediates)) {
+			uses.computeIfAbsent(intermediate, k -> new AtomicInteger()).incrementAndGet();
+			if (intermediate.isFFT())
+				fftBorder.accumulateAndGet(intermediate.border(), Math::max);
+		}
+	}
+
+	/**
+	 * Removes the given intermediates from the cache, if they are not retained
+	 * anymore.
+	 */
+	public void release(Collection<Intermediate> intermediates) {
+		for (Intermediate intermediate : Intermediate.withDependencies(intermediates)) {
+			AtomicInteger count = uses.get(intermediate);
+			if (count != null && count.decrementAndGet() == 0)
+				cache.remove(intermediate);
+		}
+		// NB: A transform might be shared by features with different borders,
+		// it's removed when no transform is retained anymore.
+		if (uses.entrySet().stream().noneMatch(entry -> entry.getKey().isFFT() && entry.getValue().get() > 0)) {
+			ffts.clear();
+			fftBorder.set(0);
+		}
+	}
+
+	/**
+	 * Returns the intermediates, that are currently cached.
+	 */
+	public Set<Intermediate> cachedIntermediates() {
+		Set<Intermediate> result = new HashSet<>(cache.keySet());
+		result.addAll(ffts.keySet());
+		return Collections.unmodifiableSet(result);
+	}
+
+	private RandomAccessibleInterval<FloatType> calculateGauss(double sigma, Interval interval) {
+		int factor = PyramidGauss.factor(sigma, pyramidTolerance);
+		if (factor > 1)
+			return PyramidGauss.gauss(ops, original, interval, sigma, factor);
+		if (sigma >= recursiveGaussThreshold)
+			return RecursiveGauss.gauss(ops, original, interval, sigma);
+		double[] sigmas = RevampUtils.nCopies(interval.numDimensions(), sigma);
+		return RevampUtils.gauss(ops, original, interval, sigmas);
+	}
+
+	/**
+	 * Returns the interval of the original image, that is read, when blurred
+	 * images with the given sigma are requested for a {@link FeatureInput} with
+	 * the given target interval.
+	 */
+	public static Interval gaussRequiredInput(Interval targetInterval, double sigma) {
+		Interval cacheInterval = Intervals.expand(targetInterval, CACHE_BORDER);
+		return RevampUtils.gaussRequiredInput(cacheInterval, RevampUtils.nCopies(cacheInterval.numDimensions(), sigma));
+	}
+
+	/**
+	 * Same as {@link #gaussRequiredInput(Interval, double)}, but for a
+	 * {@link FeatureInput} with the given pyramid tolerance.
+	 */
+	public static Interval gaussRequiredInput(Interval targetInterval, double sigma, double pyramidTolerance) {
+		Interval cacheInterval = Intervals.expand(targetInterval, CACHE_BORDER);
+		int factor = PyramidGauss.factor(sigma, pyramidTolerance);
+		return Intervals.union(gaussRequiredInput(targetInterval, sigma),
+				PyramidGauss.requiredInput(cacheInterval, sigma, factor));
+	}
+
+	private static boolean contains(Interval containing, Interval contained) {
+		for (int d = 0; d < containing.numDimensions(); d++)
+			if (contained.min(d) < containing.min(d) || contained.max(d) > containing.max(d))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Value that is calculated on first request. Concurrent requests wait for
+	 * the calculation to finish, but don't block requests for other values.
+	 */
+	private static class Lazy<T> {
+
+		private Supplier<T> supplier;
+
+		private T value;
+
+		private Lazy(Supplier<T> supplier) {
+			this.supplier = supplier;
+		}
+
+		private synchronized T get() {
+			if (supplier != null) {
+				value = supplier.get();
+				supplier = null;
+			}
+			return value;
+		}
+	}
+}
@@ -1,14 +1,20 @@
 package net.imglib2.trainable_segmention.pixel_feature.filter;
 
 import net.imagej.ops.OpEnvironment;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Created by arzt on 23.08.17.
@@ -23,6 +29,10 @@ public class FeatureJoiner {
 
 	private final int count;
 
+	private ExecutorService executor = null;
+
+	private int numThreads = 1;
+
 	public FeatureJoiner(List<FeatureOp> features) {
 		this.settings = checkGlobalSettings(features);
 		this.ops = checkOps(features);
@@ -58,12 +68,114 @@ public class FeatureJoiner {
 	public void apply(RandomAccessible<FloatType> in, List<RandomAccessibleInterval<FloatType>> out) {
 		if(out.size() != count)
 			throw new IllegalArgumentException();
+		if(count == 0)
+			return;
+		apply(new FeatureInput(ops, in, out.get(0)), out);
+	}
+
+	public void apply(FeatureInput in, List<RandomAccessibleInterval<FloatType>> out) {
+		FeatureTask.runAll(tasks(in, out), executor, numThreads);
+	}
+
+	/**
+	 * Returns the tasks, that together calculate all features. The features of
+	 * groups are split into separate tasks, such that they can be run in
+	 * parallel. The tasks are ordered as in the {@link #plan()}, and release the
+	 * intermediates they use from the {@link FeatureInput}'s cache when done.
+	 */
+	public List<FeatureTask> tasks(FeatureInput in, List<RandomAccessibleInterval<FloatType>> out) {
+		if(out.size() != count)
+			throw new IllegalArgumentException();
+		List<FeatureOp> leafs = leafFeatures();
+		List<List<RandomAccessibleInterval<FloatType>>> outputs = new ArrayList<>();
 		int startIndex = 0;
+		for(FeatureOp feature : leafs) {
+			outputs.add(out.subList(startIndex, startIndex + feature.count()));
+			startIndex += feature.count();
+		}
+		List<Integer> order = IntStream.range(0, leafs.size()).boxed().collect(Collectors.toList());
+		order.sort(Comparator.comparing(leafs::get, FeaturePlan.EXECUTION_ORDER));
+		List<FeatureTask> tasks = new ArrayList<>();
+		for(int i : order)
+			tasks.add(task(in, leafs.get(i), outputs.get(i)));
+		return tasks;
+	}
+
+	private static FeatureTask task(FeatureInput in, FeatureOp feature, List<RandomAccessibleInterval<FloatType>> output) {
+		List<Intermediate> intermediates = feature.intermediates();
+		in.retain(intermediates);
+		return new FeatureTask(feature.cost(), () -> {
+			try {
+				feature.apply(in, output);
+			}
+			finally {
+				in.release(intermediates);
+			}
+		});
+	}
+
+	/**
+	 * Returns the execution plan of the features, which tells the intermediate
+	 * results shared between the features.
+	 */
+	public FeaturePlan plan() {
+		return FeaturePlan.of(leafFeatures());
+	}
+
+	/**
+	 * Returns the union of the input intervals required by the features.
+	 */
+	public Interval requiredInput(Interval outputInterval) {
+		Interval result = outputInterval;
+		for (FeatureOp feature : features)
+			result = Intervals.union(result, feature.requiredInput(outputInterval));
+		return result;
+	}
+
+	/**
+	 * Returns the features, with all groups replaced by the features they
+	 * contain. The outputs of the returned features are in the same order as
+	 * the outputs of this {@link FeatureJoiner}.
+	 */
+	public List<FeatureOp> leafFeatures() {
+		List<FeatureOp> leafs = new ArrayList<>();
 		for(FeatureOp feature : features) {
-			int count = feature.count();
-			feature.apply(in, out.subList(startIndex, startIndex + count));
-			startIndex += count;
+			if(feature instanceof AbstractGroupFeatureOp)
+				leafs.addAll(((AbstractGroupFeatureOp) feature).featureGroup.leafFeatures());
+			else
+				leafs.add(feature);
 		}
+		return leafs;
+	}
+
+	public double cost() {
+		return features.stream().mapToDouble(FeatureOp::cost).sum();
+	}
+
+	/**
+	 * Sets the {@link ExecutorService} used to calculate the features in
+	 * parallel. By default the common fork join pool is used.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the maximal number of features, that are calculated in parallel.
+	 * The default is one, which means sequential calculation.
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive.");
+		this.numThreads = numThreads;
+	}
+
+	public ExecutorService executor() {
+		return executor;
+	}
+
+	public int numThreads() {
+		return numThreads;
 	}
 
 	public List<String> attributeLabels() {
@@ -2,12 +2,14 @@ package net.imglib2.trainable_segmention.pixel_feature.filter;
 
 import net.imagej.ops.Op;
 import net.imagej.ops.special.function.UnaryFunctionOp;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
 import net.imglib2.type.numeric.real.FloatType;
 import org.scijava.plugin.SciJavaPlugin;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -21,8 +23,44 @@ public interface FeatureOp extends SciJavaPlugin, Op, UnaryFunctionOp<RandomAcce
 
 	void apply(RandomAccessible<FloatType> input, List<RandomAccessibleInterval<FloatType>> output);
 
+	/**
+	 * Calculates the features, intermediate results like blurred images
+	 * might be taken from the {@link FeatureInput}'s cache.
+	 */
+	default void apply(FeatureInput input, List<RandomAccessibleInterval<FloatType>> output) {
+		apply(input.original(), output);
+	}
+
 	GlobalSettings globalSettings();
 
+	/**
+	 * Returns the interval of the input image, that is needed to calculate the
+	 * features for the given output interval. Pixels outside of the returned
+	 * interval might still be accessed, but their values don't influence the
+	 * result.
+	 */
+	default Interval requiredInput(Interval outputInterval) {
+		return outputInterval;
+	}
+
+	/**
+	 * Returns the intermediate results, like blurred images, that this feature
+	 * takes from the {@link FeatureInput}'s cache. They are used to share the
+	 * intermediates between features, see {@link FeaturePlan}.
+	 */
+	default List<Intermediate> intermediates() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Rough estimate of the time needed to calculate this feature, relative to
+	 * copying one image. It's used to start expensive features first, when
+	 * features are calculated in parallel.
+	 */
+	default double cost() {
+		return count();
+	}
+
 	default boolean checkGlobalSettings(GlobalSettings globals) {
 		return true;
 	}
@@ -0,0 +1,105 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The execution plan of a list of features. It's a graph of the shared
+ * {@link Intermediate} results (blurred images, derivatives) and the features
+ * that use them. Every intermediate is calculated only once, and released by
+ * {@link FeatureInput} after it's last user finished.
+ * <p>
+ * The features are ordered such that the users of an intermediate run close
+ * together, which allows to release the intermediates early, when the
+ * features are calculated sequentially.
+ *
+ * @author Matthias Arzt
+ */
+public class FeaturePlan {
+
+	/**
+	 * Features that don't use any intermediate come first, followed by the
+	 * features sorted by the largest sigma of their intermediates.
+	 */
+	static final Comparator<FeatureOp> EXECUTION_ORDER = Comparator.comparingDouble(FeaturePlan::maxSigma);
+
+	private final List<FeatureOp> features;
+
+	private final Map<Intermediate, List<FeatureOp>> users = new LinkedHashMap<>();
+
+	private FeaturePlan(List<FeatureOp> features) {
+		this.features = new ArrayList<>(features);
+		this.features.sort(EXECUTION_ORDER);
+		for (FeatureOp feature : this.features)
+			for (Intermediate intermediate : Intermediate.withDependencies(feature.intermediates()))
+				users.computeIfAbsent(intermediate, k -> new ArrayList<>()).add(feature);
+	}
+
+	/**
+	 * Returns the plan for the given features. Groups need to be split into
+	 * their single features before, see {@link FeatureJoiner#leafFeatures()}.
+	 */
+	public static FeaturePlan of(List<FeatureOp> features) {
+		return new FeaturePlan(features);
+	}
+
+	/**
+	 * Returns the features in the order of execution.
+	 */
+	public List<FeatureOp> features() {
+		return Collections.unmodifiableList(features);
+	}
+
+	/**
+	 * Returns the distinct intermediates, that are calculated.
+	 */
+	public Set<Intermediate> intermediates() {
+		return Collections.unmodifiableSet(users.keySet());
+	}
+
+	/**
+	 * Returns the features that use the given intermediate, directly or
+	 * through another intermediate.
+	 */
+	public List<FeatureOp> users(Intermediate intermediate) {
+		return Collections.unmodifiableList(users.getOrDefault(intermediate, Collections.emptyList()));
+	}
+
+	/**
+	 * Returns the number of intermediates, that would be calculated if they
+	 * weren't shared.
+	 */
+	public int requestedIntermediates() {
+		return users.values().stream().mapToInt(List::size).sum();
+	}
+
+	/**
+	 * Returns the number of intermediate calculations, that are saved by
+	 * sharing them between features.
+	 */
+	public int savedCalculations() {
+		return requestedIntermediates() - users.size();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<Intermediate, List<FeatureOp>> entry : users.entrySet())
+			text.append(entry.getKey()).append(": ").append(entry.getValue().size()).append(" users\n");
+		text.append("features: ").append(features.size())
+				.append(", intermediates: ").append(users.size())
+				.append(", requested: ").append(requestedIntermediates())
+				.append(", saved: ").append(savedCalculations());
+		return text.toString();
+	}
+
+	private static double maxSigma(FeatureOp feature) {
+		return feature.intermediates().stream().mapToDouble(Intermediate::sigma)
+				.max().orElse(Double.NEGATIVE_INFINITY);
+	}
+}
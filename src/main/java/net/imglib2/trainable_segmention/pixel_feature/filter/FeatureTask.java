@@ -0,0 +1,198 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The calculation of one {@link FeatureOp} on one channel, together with an
+ * estimate of it's cost.
+ *
+ * @author Matthias Arzt
+ */
+public class FeatureTask implements Runnable {
+
+	/**
+	 * Number of threads, that the task running on the current thread may use
+	 * for nested calls of {@link #runAll}. Null outside of runAll.
+	 */
+	private static final ThreadLocal<Integer> budget = new ThreadLocal<>();
+
+	private static final ExecutorService inline = new InlineExecutorService();
+
+	private final double cost;
+
+	private final Runnable action;
+
+	public FeatureTask(double cost, Runnable action) {
+		this.cost = cost;
+		this.action = action;
+	}
+
+	public double cost() {
+		return cost;
+	}
+
+	@Override
+	public void run() {
+		action.run();
+	}
+
+	/**
+	 * Runs all the given tasks, using at most numThreads threads of the given
+	 * executor. The most expensive tasks are started first. If numThreads is
+	 * one, the tasks are run in the given order on the calling thread.
+	 * <p>
+	 * The calling thread works on the tasks too. When no task is left, it
+	 * only waits for the helpers that already started. Helpers that are still
+	 * queued in the executor are cancelled. This avoids a dead lock, if runAll
+	 * is called from within a thread of a small executor, whose threads are
+	 * all busy.
+	 *
+	 * @param executor ExecutorService to use, if null the common
+	 *                 {@link ForkJoinPool} is used.
+	 */
+	public static void runAll(List<FeatureTask> tasks, ExecutorService executor, int numThreads) {
+		int threads = availableThreads(numThreads);
+		int workers = Math.min(threads, tasks.size());
+		if (workers <= 1) {
+			tasks.forEach(FeatureTask::run);
+			return;
+		}
+		List<FeatureTask> sorted = new ArrayList<>(tasks);
+		sorted.sort(Comparator.comparingDouble(FeatureTask::cost).reversed());
+		Queue<FeatureTask> queue = new ConcurrentLinkedQueue<>(sorted);
+		ExecutorService service = executor == null ? ForkJoinPool.commonPool() : executor;
+		List<Future<?>> futures = new ArrayList<>();
+		List<AtomicBoolean> started = new ArrayList<>();
+		for (int i = 1; i < workers; i++) {
+			AtomicBoolean helperStarted = new AtomicBoolean();
+			started.add(helperStarted);
+			futures.add(service.submit(() -> {
+				if (helperStarted.compareAndSet(false, true))
+					work(queue, threads / workers);
+			}));
+		}
+		work(queue, threads / workers);
+		for (int i = 0; i < futures.size(); i++) {
+			// NB: A helper, that didn't start yet, has nothing left to do.
+			if (started.get(i).compareAndSet(false, true))
+				futures.get(i).cancel(false);
+			else
+				waitFor(futures.get(i));
+		}
+	}
+
+	/**
+	 * Returns the number of threads, that may be used on the current thread,
+	 * if numThreads are requested. This is less than numThreads, if the
+	 * current thread is one of several workers of {@link #runAll}.
+	 */
+	public static int availableThreads(int numThreads) {
+		Integer threads = budget.get();
+		return threads == null ? numThreads : Math.min(numThreads, threads);
+	}
+
+	/**
+	 * Returns the executor for calculations, that split into sub tasks and
+	 * block until the sub tasks are done, like the FFT of imglib2. Blocking is
+	 * only safe on a {@link ForkJoinPool}, whose threads run other tasks while
+	 * they wait. The common pool is used if no executor is given, this
+	 * parallelizes such calculations by default. Other executors and workers
+	 * of {@link #runAll}, that have no threads to spare, get an executor that
+	 * runs the sub tasks on the calling thread.
+	 *
+	 * @param executor ExecutorService of the features, may be null.
+	 */
+	public static ExecutorService subtaskExecutor(ExecutorService executor) {
+		Integer threads = budget.get();
+		if (threads != null && threads <= 1)
+			return inline;
+		ExecutorService service = executor == null ? ForkJoinPool.commonPool() : executor;
+		return service instanceof ForkJoinPool ? service : inline;
+	}
+
+	private static void work(Queue<FeatureTask> queue, int threads) {
+		Integer previous = budget.get();
+		budget.set(threads);
+		try {
+			FeatureTask task;
+			while ((task = queue.poll()) != null)
+				task.run();
+		}
+		catch (Throwable e) {
+			queue.clear();
+			throw e;
+		}
+		finally {
+			if (previous == null)
+				budget.remove();
+			else
+				budget.set(previous);
+		}
+	}
+
+	private static void waitFor(Future<?> future) {
+		try {
+			future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Runs every task immediately on the calling thread.
+	 */
+	private static class InlineExecutorService extends AbstractExecutorService {
+
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+
+		@Override
+		public void shutdown() {
+			// the executor is shared, it can't be shut down
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Identifies an intermediate result, that is shared between features through
+ * the cache of {@link FeatureInput}. For example the gaussian blurred image
+ * for a certain sigma, it's Sobel derivatives, or the Fourier transform of
+ * the input image.
+ *
+ * @author Matthias Arzt
+ * @see FeatureOp#intermediates()
+ * @see FeaturePlan
+ */
+public final class Intermediate {
+
+	private final String name;
+
+	private final double sigma;
+
+	private final long border;
+
+	private final List<Intermediate> dependencies;
+
+	private Intermediate(String name, double sigma, List<Intermediate> dependencies) {
+		this(name, sigma, 0, dependencies);
+	}
+
+	private Intermediate(String name, double sigma, long border, List<Intermediate> dependencies) {
+		this.name = name;
+		this.sigma = sigma;
+		this.border = border;
+		this.dependencies = dependencies;
+	}
+
+	/**
+	 * The input image blurred with the given sigma.
+	 */
+	public static Intermediate gauss(double sigma) {
+		return new Intermediate("gauss", sigma, Collections.emptyList());
+	}
+
+	/**
+	 * The Sobel derivative in X direction of the blurred input image.
+	 */
+	public static Intermediate sobelX(double sigma) {
+		return new Intermediate("sobel_x", sigma, Collections.singletonList(gauss(sigma)));
+	}
+
+	/**
+	 * The Sobel derivative in Y direction of the blurred input image.
+	 */
+	public static Intermediate sobelY(double sigma) {
+		return new Intermediate("sobel_y", sigma, Collections.singletonList(gauss(sigma)));
+	}
+
+	/**
+	 * The Fourier transform of the input image, padded for convolutions with
+	 * kernels that extend up to the given border around their center. All
+	 * features share the transform with the largest border, see
+	 * {@link FeatureInput#fft(long)}.
+	 */
+	public static Intermediate fft(long border) {
+		return new Intermediate("fft", 0, border, Collections.emptyList());
+	}
+
+	public double sigma() {
+		return sigma;
+	}
+
+	public long border() {
+		return border;
+	}
+
+	public boolean isFFT() {
+		return name.equals("fft");
+	}
+
+	/**
+	 * Returns the intermediates, that are needed to calculate this one.
+	 */
+	public List<Intermediate> dependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * Returns the given intermediates, together with all the intermediates
+	 * they depend on.
+	 */
+	public static Set<Intermediate> withDependencies(Collection<Intermediate> intermediates) {
+		Set<Intermediate> result = new LinkedHashSet<>();
+		for (Intermediate intermediate : intermediates)
+			if (result.add(intermediate))
+				result.addAll(withDependencies(intermediate.dependencies));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Intermediate))
+			return false;
+		Intermediate other = (Intermediate) obj;
+		return name.equals(other.name) && Double.compare(sigma, other.sigma) == 0 && border == other.border;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, sigma, border);
+	}
+
+	@Override
+	public String toString() {
+		return name + "(" + (isFFT() ? border : sigma) + ")";
+	}
+}
@@ -4,12 +4,11 @@ import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.algorithm.gauss3.Gauss3;
-import net.imglib2.img.Img;
 import net.imglib2.loops.LoopBuilder;
-import net.imglib2.trainable_segmention.RevampUtils;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
@@ -50,6 +49,22 @@ public class DifferenceOfGaussiansFeature extends AbstractFeatureOp {
 		return sigmaPairs.size();
 	}
 
+	@Override
+	public double cost() {
+		return count() + sigmas.stream().mapToDouble(x -> x).sum();
+	}
+
+	@Override
+	public List<Intermediate> intermediates() {
+		return sigmas.stream().map(sigma -> Intermediate.gauss(sigma * 0.4)).collect(Collectors.toList());
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		double maxSigma = sigmas.stream().mapToDouble(x -> x).max().orElse(0);
+		return FeatureInput.gaussRequiredInput(outputInterval, 0.4 * maxSigma);
+	}
+
 	@Override
 	public List<String> attributeLabels() {
 		return sigmaPairs.stream().map(pair -> "Difference_of_gaussians_" + pair.getA() + "_" + pair.getB())
@@ -58,6 +73,11 @@ public class DifferenceOfGaussiansFeature extends AbstractFeatureOp {
 
 	@Override
 	public void apply(RandomAccessible<FloatType> input, List<RandomAccessibleInterval<FloatType>> output) {
+		apply(new FeatureInput(ops(), input, output.get(0)), output);
+	}
+
+	@Override
+	public void apply(FeatureInput input, List<RandomAccessibleInterval<FloatType>> output) {
 		Interval interval = new FinalInterval(output.get(0));
 		Map<Double, RandomAccessibleInterval<FloatType>> gausses = calculateGausses(input, interval);
 		calculateDifferences(gausses, output);
@@ -71,10 +91,10 @@ public class DifferenceOfGaussiansFeature extends AbstractFeatureOp {
 		}
 	}
 
-	private Map<Double, RandomAccessibleInterval<FloatType>> calculateGausses(RandomAccessible<FloatType> input, Interval interval) {
+	private Map<Double, RandomAccessibleInterval<FloatType>> calculateGausses(FeatureInput input, Interval interval) {
 		Map<Double, RandomAccessibleInterval<FloatType>> gausses = new HashMap<>();
 		for (double sigma : sigmas)
-			gausses.put(sigma, gauss(input, interval, sigma));
+			gausses.put(sigma, input.gauss(sigma * 0.4, interval));
 		return gausses;
 	}
 
@@ -83,10 +103,4 @@ public class DifferenceOfGaussiansFeature extends AbstractFeatureOp {
 				(m, s, t) -> t.setReal(m.getRealFloat() - s.getRealFloat())
 		);
 	}
-
-	private RandomAccessibleInterval<FloatType> gauss(RandomAccessible<FloatType> input, Interval interval, double sigma) {
-		Img<FloatType> result = ops().create().img(interval, new FloatType());
-		RevampUtils.wrapException(() -> Gauss3.gauss(sigma * 0.4, input, result) );
-		return result;
-	}
 }
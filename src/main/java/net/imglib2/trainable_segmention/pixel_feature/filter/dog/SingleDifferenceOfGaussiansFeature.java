@@ -1,17 +1,18 @@
 package net.imglib2.trainable_segmention.pixel_feature.filter.dog;
 
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.algorithm.gauss3.Gauss3;
-import net.imglib2.exception.IncompatibleTypeException;
-import net.imglib2.img.Img;
+import net.imglib2.loops.LoopBuilder;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
 import net.imglib2.type.numeric.real.FloatType;
-import net.imglib2.view.Views;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -32,24 +33,41 @@ public class SingleDifferenceOfGaussiansFeature extends AbstractFeatureOp {
 		return 1;
 	}
 
+	@Override
+	public double cost() {
+		return 1 + sigma1 + sigma2;
+	}
+
 	@Override
 	public void apply(RandomAccessible<FloatType> in, List<RandomAccessibleInterval<FloatType>> out) {
+		apply(new FeatureInput(ops(), in, out.get(0)), out);
+	}
+
+	@Override
+	public void apply(FeatureInput in, List<RandomAccessibleInterval<FloatType>> out) {
 		dog(in, out.get(0));
 	}
 
+	@Override
+	public List<Intermediate> intermediates() {
+		return Arrays.asList(Intermediate.gauss(sigma1 * 0.4), Intermediate.gauss(sigma2 * 0.4));
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return FeatureInput.gaussRequiredInput(outputInterval, 0.4 * Math.max(sigma1, sigma2));
+	}
+
 	@Override
 	public List<String> attributeLabels() {
 		return Collections.singletonList("Difference_of_gaussians_" + sigma1 + "_" + sigma2);
 	}
 
-	private void dog(RandomAccessible<FloatType> in, RandomAccessibleInterval<FloatType> out) {
-		try {
-			Img<FloatType> tmp = ops().create().img(out);
-			Gauss3.gauss(sigma1 * 0.4, in, tmp);
-			Gauss3.gauss(sigma2 * 0.4, in, out);
-			Views.interval(Views.pair(tmp, out), out).forEach(p -> p.getB().sub(p.getA()));
-		} catch (IncompatibleTypeException e) {
-			throw new RuntimeException(e);
-		}
+	private void dog(FeatureInput in, RandomAccessibleInterval<FloatType> out) {
+		RandomAccessibleInterval<FloatType> gauss1 = in.gauss(sigma1 * 0.4, out);
+		RandomAccessibleInterval<FloatType> gauss2 = in.gauss(sigma2 * 0.4, out);
+		LoopBuilder.setImages(gauss1, gauss2, out).forEachPixel(
+				(g1, g2, o) -> o.setReal(g2.getRealFloat() - g1.getRealFloat())
+		);
 	}
 }
@@ -0,0 +1,113 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.fft;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.util.Intervals;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Process wide pool of complex images, that are used as scratch buffers by
+ * {@link InputFFT#convolve}. Tiles of the same shape have the same padded
+ * dimensions, the buffers are therefore reused between tiles and features,
+ * instead of being allocated for each convolution.
+ * <p>
+ * The pool is bounded by the total size of the free buffers, see
+ * {@link #setMaxBytes(long)}. The least recently released buffers are
+ * dropped first, and can then be garbage collected.
+ *
+ * @author Matthias Arzt
+ */
+public final class ComplexBuffers {
+
+	/** Free buffers, the most recently released first. */
+	private static final LinkedList<Img<ComplexFloatType>> free = new LinkedList<>();
+
+	private static long freeBytes = 0;
+
+	private static long maxBytes = Runtime.getRuntime().maxMemory() / 16;
+
+	private ComplexBuffers() {
+		// prevent from instantiation
+	}
+
+	/**
+	 * Sets the maximal total size in bytes of the free buffers kept in the
+	 * pool. The default is a sixteenth of the maximal heap size.
+	 */
+	public static void setMaxBytes(long maxBytes) {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("Maximal size must not be negative, but is " + maxBytes);
+		synchronized (free) {
+			ComplexBuffers.maxBytes = maxBytes;
+			evict();
+		}
+	}
+
+	public static long maxBytes() {
+		synchronized (free) {
+			return maxBytes;
+		}
+	}
+
+	/**
+	 * Total size in bytes of the free buffers kept in the pool.
+	 */
+	static long freeBytes() {
+		synchronized (free) {
+			return freeBytes;
+		}
+	}
+
+	/**
+	 * Returns a buffer with the given dimensions, and min at the origin. The
+	 * content of the buffer is undefined.
+	 */
+	static Img<ComplexFloatType> take(long[] dimensions) {
+		synchronized (free) {
+			Iterator<Img<ComplexFloatType>> iterator = free.iterator();
+			while (iterator.hasNext()) {
+				Img<ComplexFloatType> buffer = iterator.next();
+				if (Arrays.equals(dimensions, Intervals.dimensionsAsLongArray(buffer))) {
+					iterator.remove();
+					freeBytes -= bytes(buffer);
+					return buffer;
+				}
+			}
+		}
+		return ArrayImgs.complexFloats(dimensions);
+	}
+
+	/**
+	 * Returns the buffer to the pool. It must not be used afterwards.
+	 */
+	static void release(Img<ComplexFloatType> buffer) {
+		synchronized (free) {
+			free.addFirst(buffer);
+			freeBytes += bytes(buffer);
+			evict();
+		}
+	}
+
+	static void clear() {
+		synchronized (free) {
+			free.clear();
+			freeBytes = 0;
+		}
+	}
+
+	/**
+	 * Size in bytes of a complex float image.
+	 */
+	static long bytes(Img<ComplexFloatType> image) {
+		return 2 * Float.BYTES * Intervals.numElements(image);
+	}
+
+	private static void evict() {
+		while (freeBytes > maxBytes)
+			freeBytes -= bytes(free.removeLast());
+	}
+}
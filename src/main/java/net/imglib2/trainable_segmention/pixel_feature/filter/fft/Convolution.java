@@ -0,0 +1,148 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.fft;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Convolution of float images, that chooses between direct convolution
+ * with a separable kernel, direct convolution with a dense kernel, and
+ * convolution by FFT. The features should use this class, or
+ * {@link #strategy} together with {@link SpatialInput} and
+ * {@link InputFFT}, if the transforms of the input or kernels are shared.
+ * <p>
+ * The choice is based on a simple cost model: A direct convolution costs
+ * one multiply-add per output pixel and kernel pixel, or per output pixel
+ * and length of the one dimensional kernels, if the kernel is separable.
+ * A convolution by FFT costs one inverse transform per kernel, plus one
+ * transform of the input that is shared by all kernels. The transforms of
+ * the kernels are assumed to be cached. The constants were measured on a
+ * desktop computer, they are fixed, such that the results don't depend on
+ * the timing of the machine.
+ *
+ * @author Matthias Arzt
+ */
+public final class Convolution {
+
+	public enum Strategy {
+		SEPARABLE, DIRECT, FFT
+	}
+
+	/**
+	 * Time of one multiply-add of a direct convolution, in nanoseconds.
+	 */
+	private static final double DIRECT_COST = 0.5;
+
+	/**
+	 * Time of a real to complex FFT per pixel and log2 of the padded size,
+	 * including the copying between the images, in nanoseconds.
+	 */
+	private static final double FFT_COST = 3;
+
+	/**
+	 * Time per pixel to multiply the transforms of the input and a kernel, in
+	 * nanoseconds.
+	 */
+	private static final double MULTIPLY_COST = 2;
+
+	private Convolution() {
+		// prevent from instantiation
+	}
+
+	/**
+	 * Returns the fastest strategy, to convolve the given output interval with
+	 * the given number of kernels. If the kernel is separable,
+	 * {@link Strategy#SEPARABLE} is returned instead of
+	 * {@link Strategy#DIRECT}.
+	 */
+	public static Strategy strategy(long[] kernelDimensions, boolean separable, Interval output, int numKernels) {
+		double pixels = Intervals.numElements(output);
+		double kernelCost = 1;
+		double kernelLengths = 0;
+		for (long size : kernelDimensions) {
+			kernelCost *= size;
+			kernelLengths += size;
+		}
+		if (separable)
+			kernelCost = kernelLengths;
+		double directCost = numKernels * pixels * kernelCost * DIRECT_COST;
+		long border = 0;
+		for (long size : kernelDimensions)
+			border = Math.max(border, size / 2);
+		double padded = 1;
+		for (long size : InputFFT.paddedDimensions(output, border))
+			padded *= size;
+		double transformCost = padded * Math.log(padded) / Math.log(2) * FFT_COST;
+		double fftCost = (numKernels + 1) * transformCost + numKernels * padded * MULTIPLY_COST;
+		if (fftCost < directCost)
+			return Strategy.FFT;
+		return separable ? Strategy.SEPARABLE : Strategy.DIRECT;
+	}
+
+	/**
+	 * Convolves the input with the kernel, that must be centered at the
+	 * origin. The executor is used for the FFT, see {@link InputFFT}.
+	 */
+	public static void convolve(RandomAccessible<FloatType> input, RandomAccessibleInterval<FloatType> kernel,
+			RandomAccessibleInterval<FloatType> output, ExecutorService executor)
+	{
+		long border = border(kernel);
+		if (strategy(Intervals.dimensionsAsLongArray(kernel), false, output, 1) == Strategy.FFT)
+			new InputFFT(input, output, border, executor).convolve(kernel, output);
+		else
+			new SpatialInput(input, output, border).convolve(kernel, output);
+	}
+
+	/**
+	 * Convolves the input with a separable kernel, given as one dimensional
+	 * kernels of odd length, one for each dimension.
+	 */
+	public static void convolveSeparable(RandomAccessible<FloatType> input, float[][] kernels,
+			RandomAccessibleInterval<FloatType> output, ExecutorService executor)
+	{
+		long[] kernelDimensions = new long[kernels.length];
+		long border = 0;
+		for (int d = 0; d < kernels.length; d++) {
+			kernelDimensions[d] = kernels[d].length;
+			border = Math.max(border, kernels[d].length / 2);
+		}
+		if (strategy(kernelDimensions, true, output, 1) == Strategy.FFT)
+			new InputFFT(input, output, border, executor).convolve(outerProduct(kernels), output);
+		else
+			new SpatialInput(input, output, border).convolveSeparable(kernels, output);
+	}
+
+	/**
+	 * Largest distance of a kernel pixel to the kernel center.
+	 */
+	public static long border(Interval kernel) {
+		long border = 0;
+		for (int d = 0; d < kernel.numDimensions(); d++)
+			border = Math.max(border, Math.max(-kernel.min(d), kernel.max(d)));
+		return border;
+	}
+
+	private static RandomAccessibleInterval<FloatType> outerProduct(float[][] kernels) {
+		int n = kernels.length;
+		long[] dimensions = new long[n];
+		long[] min = new long[n];
+		for (int d = 0; d < n; d++) {
+			dimensions[d] = kernels[d].length;
+			min[d] = -(kernels[d].length / 2);
+		}
+		float[] values = new float[(int) Intervals.numElements(dimensions)];
+		for (int i = 0; i < values.length; i++) {
+			float value = 1;
+			for (int d = 0, rest = i; d < n; rest /= kernels[d].length, d++)
+				value *= kernels[d][rest % kernels[d].length];
+			values[i] = value;
+		}
+		return Views.translate(ArrayImgs.floats(values, dimensions), min);
+	}
+}
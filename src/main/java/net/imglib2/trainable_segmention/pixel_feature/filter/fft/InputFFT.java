@@ -0,0 +1,167 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.fft;
+
+import net.imglib2.FinalDimensions;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.fft2.FFT;
+import net.imglib2.algorithm.fft2.FFTConvolution;
+import net.imglib2.algorithm.fft2.FFTMethods;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureTask;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * The Fourier transform of an image, that can be convolved with many
+ * kernels. The image is padded like {@link FFTConvolution} does, but for the
+ * largest kernel that will be used. Kernels that are smaller are padded with
+ * zeros, which gives the same result up to rounding errors.
+ * <p>
+ * Unlike {@link FFTConvolution}, this class is thread safe, the transform of
+ * the image is never modified.
+ *
+ * @author Matthias Arzt
+ */
+public class InputFFT {
+
+	private final Interval interval;
+
+	private final long border;
+
+	private final FinalDimensions paddedDimensions;
+
+	private final ExecutorService executor;
+
+	private final Img<ComplexFloatType> fft;
+
+	/**
+	 * Calculates the Fourier transform of the input image, for convolutions
+	 * with the given output interval and kernels that extend at most the given
+	 * border around their center.
+	 *
+	 * @param executor ExecutorService of the features, the transforms are
+	 *                 parallelized as described in
+	 *                 {@link FeatureTask#subtaskExecutor}. May be null.
+	 */
+	public InputFFT(RandomAccessible<FloatType> input, Interval interval, long border, ExecutorService executor) {
+		this.interval = new FinalInterval(interval);
+		this.border = border;
+		this.executor = executor;
+		this.paddedDimensions = FinalDimensions.wrap(paddedDimensions(interval, border));
+		Interval paddedInterval = FFTMethods.paddingIntervalCentered(interval, paddedDimensions);
+		this.fft = withExecutor(service -> FFT.realToComplex(Views.interval(input, paddedInterval), factory(), service));
+	}
+
+	/**
+	 * Output interval of the convolutions.
+	 */
+	public Interval interval() {
+		return interval;
+	}
+
+	/**
+	 * The largest border of a kernel, that can be used for convolution.
+	 */
+	public long border() {
+		return border;
+	}
+
+	/**
+	 * Dimensions of the padded image, the Fourier transform of a kernel
+	 * depends on them.
+	 */
+	public long[] paddedDimensions() {
+		return Intervals.dimensionsAsLongArray(paddedDimensions);
+	}
+
+	/**
+	 * Dimensions of the padded image, for the given output interval and
+	 * border.
+	 */
+	static long[] paddedDimensions(Interval interval, long border) {
+		int n = interval.numDimensions();
+		long[] extendedDimensions = Intervals.dimensionsAsLongArray(Intervals.expand(interval, border));
+		long[] padded = new long[n];
+		long[] fftDimensions = new long[n];
+		FFTMethods.dimensionsRealToComplexFast(FinalDimensions.wrap(extendedDimensions), padded, fftDimensions);
+		return padded;
+	}
+
+	/**
+	 * Calculates the Fourier transform of the kernel, as needed by
+	 * {@link #convolve(Img, RandomAccessibleInterval)}. The kernel must be
+	 * centered at the origin.
+	 */
+	public Img<ComplexFloatType> kernelFFT(RandomAccessibleInterval<FloatType> kernel) {
+		int n = kernel.numDimensions();
+		for (int d = 0; d < n; d++)
+			if (Math.max(-kernel.min(d), kernel.max(d)) > border)
+				throw new IllegalArgumentException("Kernel exceeds the border of " + border + " pixels.");
+		Interval kernelInterval = FFTMethods.paddingIntervalCentered(kernel, paddedDimensions);
+		long[] min = new long[n];
+		long[] max = new long[n];
+		for (int d = 0; d < n; d++) {
+			min[d] = kernel.min(d) + kernel.dimension(d) / 2;
+			max[d] = min[d] + kernelInterval.dimension(d) - 1;
+		}
+		RandomAccessibleInterval<FloatType> padded = Views.interval(Views.extendPeriodic(
+				Views.interval(Views.extendValue(kernel, new FloatType()), kernelInterval)), new FinalInterval(min, max));
+		return withExecutor(service -> FFT.realToComplex(padded, factory(), service));
+	}
+
+	/**
+	 * Convolves the image with the kernel, whose Fourier transform is given.
+	 * The product of the transforms is calculated in a buffer that is reused
+	 * for all convolutions with the same padded dimensions, see
+	 * {@link ComplexBuffers}.
+	 */
+	public void convolve(Img<ComplexFloatType> kernelFFT, RandomAccessibleInterval<FloatType> output) {
+		for (int d = 0; d < interval.numDimensions(); d++)
+			if (output.dimension(d) != interval.dimension(d))
+				throw new IllegalArgumentException("Output dimensions don't match.");
+		Img<ComplexFloatType> product = ComplexBuffers.take(Intervals.dimensionsAsLongArray(fft));
+		try {
+			LoopBuilder.setImages(fft, kernelFFT, product).forEachPixel((a, b, p) -> {
+				p.set(a);
+				p.mul(b);
+			});
+			withExecutor(service -> {
+				FFT.complexToRealUnpad(product, output, service);
+				return null;
+			});
+		}
+		finally {
+			ComplexBuffers.release(product);
+		}
+	}
+
+	/**
+	 * Convolves the image with the given kernel, that must be centered at the
+	 * origin.
+	 */
+	public void convolve(RandomAccessibleInterval<FloatType> kernel, RandomAccessibleInterval<FloatType> output) {
+		convolve(kernelFFT(kernel), output);
+	}
+
+	private static ArrayImgFactory<ComplexFloatType> factory() {
+		return new ArrayImgFactory<>(new ComplexFloatType());
+	}
+
+	/**
+	 * FFTMethods blocks while its tasks run. The executor is therefore chosen
+	 * for each calculation by {@link FeatureTask#subtaskExecutor}, which
+	 * depends on the thread that runs it.
+	 */
+	private <T> T withExecutor(Function<ExecutorService, T> action) {
+		return action.apply(FeatureTask.subtaskExecutor(executor));
+	}
+}
@@ -0,0 +1,194 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.fft;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * An image copied into a float array, for direct convolutions with many
+ * kernels. It's the counterpart of {@link InputFFT}: The array covers the
+ * output interval expanded by the border, kernels that extend at most the
+ * border around their center can be used.
+ * <p>
+ * The convolutions are calculated line by line, one kernel pixel after
+ * the other, which keeps the innermost loop simple enough to be vectorized
+ * by the JIT compiler.
+ *
+ * @author Matthias Arzt
+ */
+public class SpatialInput {
+
+	private final Interval interval;
+
+	private final long border;
+
+	private final int[] dimensions;
+
+	private final float[] values;
+
+	/**
+	 * Copies the input image, for convolutions with the given output interval
+	 * and kernels that extend at most the given border around their center.
+	 */
+	public SpatialInput(RandomAccessible<FloatType> input, Interval interval, long border) {
+		this.interval = new FinalInterval(interval);
+		this.border = border;
+		Interval expanded = Intervals.expand(interval, border);
+		this.dimensions = toInts(Intervals.dimensionsAsLongArray(expanded));
+		this.values = new float[(int) Intervals.numElements(expanded)];
+		Cursor<FloatType> cursor = Views.flatIterable(Views.interval(input, expanded)).cursor();
+		for (int i = 0; i < values.length; i++)
+			values[i] = cursor.next().get();
+	}
+
+	/**
+	 * Output interval of the convolutions.
+	 */
+	public Interval interval() {
+		return interval;
+	}
+
+	/**
+	 * The largest border of a kernel, that can be used for convolution.
+	 */
+	public long border() {
+		return border;
+	}
+
+	/**
+	 * Convolves the image with the given kernel, that must be centered at the
+	 * origin.
+	 */
+	public void convolve(RandomAccessibleInterval<FloatType> kernel, RandomAccessibleInterval<FloatType> output) {
+		checkOutput(output);
+		int n = dimensions.length;
+		for (int d = 0; d < n; d++)
+			if (Math.max(-kernel.min(d), kernel.max(d)) > border)
+				throw new IllegalArgumentException("Kernel exceeds the border of " + border + " pixels.");
+		int[] strides = strides(dimensions);
+		int kernelSize = (int) Intervals.numElements(kernel);
+		float[] weights = new float[kernelSize];
+		int[] offsets = new int[kernelSize];
+		int count = 0;
+		Cursor<FloatType> cursor = Views.iterable(kernel).localizingCursor();
+		while (cursor.hasNext()) {
+			float weight = cursor.next().get();
+			if (weight == 0)
+				continue;
+			// NB: convolution, the input pixel at (x - k) is weighted with kernel pixel k
+			int offset = 0;
+			for (int d = 0; d < n; d++)
+				offset -= cursor.getIntPosition(d) * strides[d];
+			weights[count] = weight;
+			offsets[count] = offset;
+			count++;
+		}
+		int[] outputDimensions = toInts(Intervals.dimensionsAsLongArray(interval));
+		int width = outputDimensions[0];
+		float[] result = new float[(int) Intervals.numElements(interval)];
+		int[] position = new int[n];
+		for (int start = 0; start < result.length; start += width) {
+			int base = 0;
+			for (int d = 0; d < n; d++)
+				base += (position[d] + (int) border) * strides[d];
+			for (int k = 0; k < count; k++) {
+				float weight = weights[k];
+				int offset = base + offsets[k];
+				for (int x = 0; x < width; x++)
+					result[start + x] += weight * values[offset + x];
+			}
+			for (int d = 1; d < n && ++position[d] == outputDimensions[d]; d++)
+				position[d] = 0;
+		}
+		write(result, output);
+	}
+
+	/**
+	 * Convolves the image with a separable kernel, given as one dimensional
+	 * kernels of odd length, one for each dimension. The image is convolved
+	 * with one kernel after the other.
+	 */
+	public void convolveSeparable(float[][] kernels, RandomAccessibleInterval<FloatType> output) {
+		checkOutput(output);
+		int n = dimensions.length;
+		if (kernels.length != n)
+			throw new IllegalArgumentException("One kernel per dimension required.");
+		for (float[] kernel : kernels)
+			if (kernel.length % 2 != 1 || kernel.length / 2 > border)
+				throw new IllegalArgumentException("Kernels must have odd length, and must not exceed the border of " + border + " pixels.");
+		int[] current = dimensions.clone();
+		float[] result = values;
+		for (int d = 0; d < n; d++) {
+			int length = (int) interval.dimension(d);
+			result = convolveAlong(result, current, d, length, kernels[d]);
+			current[d] = length;
+		}
+		write(result, output);
+	}
+
+	/**
+	 * Convolves the image with the one dimensional kernel along dimension d.
+	 * The result has the given length in dimension d, all other dimensions
+	 * remain unchanged.
+	 */
+	private float[] convolveAlong(float[] in, int[] dims, int d, int length, float[] kernel) {
+		int stride = 1;
+		for (int i = 0; i < d; i++)
+			stride *= dims[i];
+		int outer = 1;
+		for (int i = d + 1; i < dims.length; i++)
+			outer *= dims[i];
+		int inLength = dims[d];
+		int shift = (int) border + kernel.length / 2;
+		float[] out = new float[stride * length * outer];
+		for (int o = 0; o < outer; o++)
+			for (int i = 0; i < length; i++) {
+				int outStart = (o * length + i) * stride;
+				for (int k = 0; k < kernel.length; k++) {
+					float weight = kernel[k];
+					if (weight == 0)
+						continue;
+					int inStart = (o * inLength + i + shift - k) * stride;
+					for (int s = 0; s < stride; s++)
+						out[outStart + s] += weight * in[inStart + s];
+				}
+			}
+		return out;
+	}
+
+	private void checkOutput(RandomAccessibleInterval<FloatType> output) {
+		for (int d = 0; d < interval.numDimensions(); d++)
+			if (output.dimension(d) != interval.dimension(d))
+				throw new IllegalArgumentException("Output dimensions don't match.");
+	}
+
+	private void write(float[] result, RandomAccessibleInterval<FloatType> output) {
+		RandomAccessibleInterval<FloatType> source = Views.translate(
+				ArrayImgs.floats(result, Intervals.dimensionsAsLongArray(output)), Intervals.minAsLongArray(output));
+		LoopBuilder.setImages(source, output).forEachPixel((s, t) -> t.set(s));
+	}
+
+	private static int[] strides(int[] dimensions) {
+		int[] strides = new int[dimensions.length];
+		int stride = 1;
+		for (int d = 0; d < dimensions.length; d++) {
+			strides[d] = stride;
+			stride *= dimensions[d];
+		}
+		return strides;
+	}
+
+	private static int[] toInts(long[] values) {
+		int[] result = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			result[i] = (int) values[i];
+		return result;
+	}
+}
@@ -0,0 +1,178 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.gabor;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.trainable_segmention.pixel_feature.filter.fft.InputFFT;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Process wide cache of Gabor kernels, their steerable bases, and of their
+ * Fourier transforms. The kernels are identified by the parameters of the
+ * {@link SingleGaborFeature}, the transforms additionally by the padded size
+ * of the image, which depends on the tile size.
+ * <p>
+ * The caches are bounded, the least recently used entries are removed
+ * first. The kernels are small, their number is bounded. The transforms
+ * have the padded size of the image, their cache is therefore bounded by
+ * the total size in bytes, see {@link #setMaxKernelFFTBytes(long)}. The
+ * caches are thread safe, but concurrent requests for a missing entry might
+ * both calculate it.
+ *
+ * @author Matthias Arzt
+ */
+public class GaborKernelCache {
+
+	private static final int MAX_KERNELS = 256;
+
+	private static final Map<List<Object>, List<Img<FloatType>>> kernelCache = lruMap(MAX_KERNELS);
+
+	private static final LinkedHashMap<List<Object>, List<Img<ComplexFloatType>>> kernelFFTCache =
+			new LinkedHashMap<>(16, 0.75f, true);
+
+	private static long kernelFFTBytes = 0;
+
+	private static long maxKernelFFTBytes = Runtime.getRuntime().maxMemory() / 8;
+
+	private static final Map<List<Object>, SteerableBasis> basisCache = lruMap(MAX_KERNELS);
+
+	private GaborKernelCache() {
+		// prevent from instantiation
+	}
+
+	/**
+	 * Sets the maximal total size in bytes of the cached kernel transforms.
+	 * The default is an eighth of the maximal heap size.
+	 */
+	public static void setMaxKernelFFTBytes(long maxBytes) {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("Maximal size must not be negative, but is " + maxBytes);
+		synchronized (kernelFFTCache) {
+			maxKernelFFTBytes = maxBytes;
+			evictKernelFFTs();
+		}
+	}
+
+	public static long maxKernelFFTBytes() {
+		synchronized (kernelFFTCache) {
+			return maxKernelFFTBytes;
+		}
+	}
+
+	/**
+	 * Total size in bytes of the cached kernel transforms.
+	 */
+	static long kernelFFTBytes() {
+		synchronized (kernelFFTCache) {
+			return kernelFFTBytes;
+		}
+	}
+
+	/**
+	 * Returns the cached kernels for the given parameters, or creates them.
+	 */
+	static List<Img<FloatType>> kernels(List<Object> parameters, Supplier<List<Img<FloatType>>> create) {
+		return getOrCreate(kernelCache, parameters, () -> Collections.unmodifiableList(create.get()));
+	}
+
+	/**
+	 * Returns the cached steerable basis of the kernels, for the given
+	 * parameters and tolerance, or calculates it.
+	 */
+	static SteerableBasis basis(List<Object> parameters, List<Img<FloatType>> kernels, double tolerance) {
+		List<Object> key = new ArrayList<>(parameters);
+		key.add(tolerance);
+		return getOrCreate(basisCache, key, () -> SteerableBasis.of(kernels, tolerance));
+	}
+
+	/**
+	 * Returns the cached Fourier transforms of the kernels, for the padded size
+	 * of the given input transform, or calculates them.
+	 */
+	static List<Img<ComplexFloatType>> kernelFFTs(List<Object> parameters,
+			List<? extends RandomAccessibleInterval<FloatType>> kernels, InputFFT input)
+	{
+		List<Object> key = new ArrayList<>(parameters);
+		key.add(Arrays.stream(input.paddedDimensions()).boxed().collect(Collectors.toList()));
+		synchronized (kernelFFTCache) {
+			List<Img<ComplexFloatType>> value = kernelFFTCache.get(key);
+			if (value != null)
+				return value;
+		}
+		// NB: Calculate outside of the lock, to not block requests for other keys.
+		List<Img<ComplexFloatType>> value = Collections.unmodifiableList(
+				kernels.stream().map(input::kernelFFT).collect(Collectors.toList()));
+		synchronized (kernelFFTCache) {
+			List<Img<ComplexFloatType>> previous = kernelFFTCache.putIfAbsent(key, value);
+			if (previous != null)
+				return previous;
+			kernelFFTBytes += bytes(value);
+			evictKernelFFTs();
+			return value;
+		}
+	}
+
+	static void clear() {
+		synchronized (kernelCache) {
+			kernelCache.clear();
+		}
+		synchronized (kernelFFTCache) {
+			kernelFFTCache.clear();
+			kernelFFTBytes = 0;
+		}
+		synchronized (basisCache) {
+			basisCache.clear();
+		}
+	}
+
+	/**
+	 * Removes the least recently used transforms, until the cache fits into
+	 * its size limit. Must be called while holding the lock of the cache.
+	 */
+	private static void evictKernelFFTs() {
+		Iterator<List<Img<ComplexFloatType>>> iterator = kernelFFTCache.values().iterator();
+		while (kernelFFTBytes > maxKernelFFTBytes && iterator.hasNext()) {
+			kernelFFTBytes -= bytes(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	private static long bytes(List<Img<ComplexFloatType>> transforms) {
+		return transforms.stream().mapToLong(image -> 2 * Float.BYTES * Intervals.numElements(image)).sum();
+	}
+
+	private static <V> V getOrCreate(Map<List<Object>, V> cache, List<Object> key, Supplier<V> create) {
+		synchronized (cache) {
+			V value = cache.get(key);
+			if (value != null)
+				return value;
+		}
+		// NB: Calculate outside of the lock, to not block requests for other keys.
+		V value = create.get();
+		synchronized (cache) {
+			V previous = cache.putIfAbsent(key, value);
+			return previous != null ? previous : value;
+		}
+	}
+
+	private static <K, V> Map<K, V> lruMap(int maxEntries) {
+		return new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+}
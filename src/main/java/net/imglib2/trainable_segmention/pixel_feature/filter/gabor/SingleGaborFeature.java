@@ -2,24 +2,29 @@ package net.imglib2.trainable_segmention.pixel_feature.filter.gabor;
 
 import net.imagej.ops.OpEnvironment;
 import net.imglib2.*;
-import net.imglib2.trainable_segmention.RevampUtils;
-import net.imglib2.algorithm.fft2.FFTConvolution;
 import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.loops.LoopBuilder;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
+import net.imglib2.trainable_segmention.pixel_feature.filter.fft.Convolution;
+import net.imglib2.trainable_segmention.pixel_feature.filter.fft.InputFFT;
+import net.imglib2.trainable_segmention.pixel_feature.filter.fft.SpatialInput;
 import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
-import net.imglib2.view.composite.GenericComposite;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.BiConsumer;
 
 /**
  * @author Matthias Arzt
@@ -51,7 +56,8 @@ public class SingleGaborFeature extends AbstractFeatureOp {
 	public void initialize() {
 		if(sigma == 0.0)
 			throw new AssertionError("sigma must be non zero.");
-		kernels = initGaborKernels(sigma, gamma, psi, frequency, nAngles);
+		kernels = GaborKernelCache.kernels(kernelParameters(),
+				() -> initGaborKernels(sigma, gamma, psi, frequency, nAngles));
 	}
 
 	@Override
@@ -61,7 +67,83 @@ public class SingleGaborFeature extends AbstractFeatureOp {
 
 	@Override
 	public void apply(RandomAccessible<FloatType> in, List<RandomAccessibleInterval<FloatType>> out) {
-		gaborProcessChannel(kernels, in, out.get(0), out.get(1));
+		apply(new FeatureInput(ops(), in, out.get(0)), out);
+	}
+
+	@Override
+	public void apply(FeatureInput in, List<RandomAccessibleInterval<FloatType>> out) {
+		double tolerance = in.steerableGaborTolerance();
+		// NB: The normalization of the legacy features isn't linear.
+		if (tolerance > 0 && !legacyNormalize) {
+			SteerableBasis basis = GaborKernelCache.basis(kernelParameters(), kernels, tolerance);
+			List<Object> basisParameters = new ArrayList<>(kernelParameters());
+			basisParameters.add(tolerance);
+			steerableProcessChannel(basis, convolver(in, out.get(0), basisParameters, basis.kernels()),
+					out.get(0), out.get(1));
+		}
+		else
+			gaborProcessChannel(convolver(in, out.get(0), kernelParameters(), kernels), out.get(0), out.get(1));
+	}
+
+	@Override
+	public double cost() {
+		// at most one inverse FFT per angle, the FFTs of the input and kernels are shared
+		return 10 * nAngles;
+	}
+
+	@Override
+	public List<Intermediate> intermediates() {
+		return Collections.singletonList(Intermediate.fft(border()));
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return Intervals.expand(outputInterval, border());
+	}
+
+	private List<Object> kernelParameters() {
+		return Arrays.asList(sigma, gamma, psi, frequency, nAngles);
+	}
+
+	/**
+	 * Largest distance of a kernel pixel to the kernel center.
+	 */
+	private long border() {
+		return Convolution.border(kernels.get(0));
+	}
+
+	/**
+	 * Convolves the input with the kernel of the given index.
+	 */
+	private interface Convolver {
+
+		void convolve(int index, RandomAccessibleInterval<FloatType> output);
+	}
+
+	/**
+	 * Returns a {@link Convolver} for the given kernels, that uses direct
+	 * convolution for small kernels, and the shared Fourier transform of the
+	 * input for large kernels, see {@link Convolution#strategy}.
+	 */
+	private Convolver convolver(FeatureInput in, Interval interval, List<Object> parameters,
+			List<? extends RandomAccessibleInterval<FloatType>> kernels)
+	{
+		long[] kernelDimensions = Intervals.dimensionsAsLongArray(kernels.get(0));
+		if (Convolution.strategy(kernelDimensions, false, interval, kernels.size()) == Convolution.Strategy.FFT) {
+			InputFFT channel = inputFFT(in, interval);
+			List<Img<ComplexFloatType>> kernelFFTs = GaborKernelCache.kernelFFTs(parameters, kernels, channel);
+			return (i, output) -> channel.convolve(kernelFFTs.get(i), output);
+		}
+		SpatialInput channel = new SpatialInput(in.original(), interval, border());
+		return (i, output) -> channel.convolve(kernels.get(i), output);
+	}
+
+	private InputFFT inputFFT(FeatureInput in, Interval interval) {
+		Interval target = in.targetInterval();
+		if (Arrays.equals(Intervals.minAsLongArray(target), Intervals.minAsLongArray(interval)) &&
+				Arrays.equals(Intervals.maxAsLongArray(target), Intervals.maxAsLongArray(interval)))
+			return in.fft(border());
+		return new InputFFT(in.original(), interval, border(), in.executor());
 	}
 
 	@Override
@@ -124,56 +206,62 @@ public class SingleGaborFeature extends AbstractFeatureOp {
 		}
 	}
 
-	private RandomAccessibleInterval<FloatType> gaborProcessChannel(List<Img<FloatType>> kernels, Img<FloatType> channel, String labelDetails) {
-		RandomAccessibleInterval<FloatType> max = ops().create().img(channel);
-		RandomAccessibleInterval<FloatType> min = ops().create().img(channel);
-		gaborProcessChannel(kernels, Views.extendBorder(channel), max, min);
-		return Views.stack(max, min);
-	}
-
-	private void gaborProcessChannel(List<Img<FloatType>> kernels, RandomAccessible<FloatType> channel, RandomAccessibleInterval<FloatType> max, RandomAccessibleInterval<FloatType> min) {
+	/**
+	 * Convolves the channel with the kernel of each angle into one scratch
+	 * image, and folds the result into the running max and min images.
+	 */
+	private void gaborProcessChannel(Convolver channel, RandomAccessibleInterval<FloatType> max, RandomAccessibleInterval<FloatType> min) {
 		Interval interval = min;
-		Img<FloatType> stack = ops().create().img(RevampUtils.appendDimensionToInterval(interval, 0, kernels.size() - 1), new FloatType());
+		Img<FloatType> response = ops().create().img(interval, new FloatType());
+		LoopBuilder.setImages(max, min).forEachPixel((ma, mi) -> {
+			ma.set(Float.NEGATIVE_INFINITY);
+			mi.set(Float.POSITIVE_INFINITY);
+		});
 		// Apply kernels
-		FFTConvolution<FloatType> fftConvolution = new FFTConvolution<>(channel, interval, kernels.get(0), (Interval) kernels.get(0), new ArrayImgFactory<>());
-		fftConvolution.setKeepImgFFT(true);
 		for (int i=0; i<kernels.size(); i++)
 		{
-			Img<FloatType> kernel = kernels.get(i);
-			RandomAccessibleInterval<FloatType> slice = Views.hyperSlice(stack, 2, i);
-			fftConvolution.setKernel(kernel);
-			fftConvolution.setOutput(slice);
-			fftConvolution.convolve();
+			channel.convolve(i, response);
 			if(legacyNormalize)
-				normalize(ops(), slice);
+				normalize(ops(), response);
+			LoopBuilder.setImages(response, max, min).forEachPixel((r, ma, mi) -> {
+				float value = r.get();
+				ma.set(Math.max(ma.get(), value));
+				mi.set(Math.min(mi.get(), value));
+			});
 		}
-
-		maxAndMinProjection(stack, max, min);
-	}
-
-	private static void maxAndMinProjection(Img<FloatType> stack, RandomAccessibleInterval<FloatType> max, RandomAccessibleInterval<FloatType> min) {
-		RandomAccessibleInterval<? extends GenericComposite<FloatType>> collapsed = Views.collapse(stack);
-		long size = stack.max(2) - stack.min(2) + 1;
-		map(collapsed, max, (in, out) -> out.set(max(in, size)));
-		map(collapsed, min, (in, out) -> out.set(min(in, size)));
-	}
-
-	private static <I, O> void map(RandomAccessible<I> in, RandomAccessibleInterval<O> out, BiConsumer<I,O> operation) {
-		Views.interval(Views.pair(in, out), out).forEach(p -> operation.accept(p.getA(), p.getB()));
-	}
-
-	private static float max(GenericComposite<FloatType> in, long size) {
-		float max = Float.NEGATIVE_INFINITY;
-		for (int i = 0; i < size; i++)
-			max = Math.max(max, in.get(i).get());
-		return max;
 	}
 
-	private static float min(GenericComposite<FloatType> in, long size) {
-		float min = Float.POSITIVE_INFINITY;
-		for (int i = 0; i < size; i++)
-			min = Math.min(min, in.get(i).get());
-		return min;
+	/**
+	 * Convolves the channel with the basis kernels only. The response of each
+	 * angle is calculated per pixel as linear combination of the basis
+	 * responses, and folded into the max and min images.
+	 */
+	private void steerableProcessChannel(SteerableBasis basis, Convolver channel,
+			RandomAccessibleInterval<FloatType> max, RandomAccessibleInterval<FloatType> min)
+	{
+		long[] dims = Intervals.dimensionsAsLongArray(min);
+		int size = (int) Intervals.numElements(min);
+		float[][] responses = new float[basis.kernels().size()][size];
+		for (int j = 0; j < responses.length; j++)
+			channel.convolve(j, ArrayImgs.floats(responses[j], dims));
+		float[][] coefficients = basis.coefficients();
+		float[] maxValues = new float[size];
+		float[] minValues = new float[size];
+		for (int i = 0; i < size; i++) {
+			float maxValue = Float.NEGATIVE_INFINITY;
+			float minValue = Float.POSITIVE_INFINITY;
+			for (float[] c : coefficients) {
+				float value = 0;
+				for (int j = 0; j < responses.length; j++)
+					value += c[j] * responses[j][i];
+				maxValue = Math.max(maxValue, value);
+				minValue = Math.min(minValue, value);
+			}
+			maxValues[i] = maxValue;
+			minValues[i] = minValue;
+		}
+		LoopBuilder.setImages(ArrayImgs.floats(maxValues, dims), max).forEachPixel((i, o) -> o.set(i));
+		LoopBuilder.setImages(ArrayImgs.floats(minValues, dims), min).forEachPixel((i, o) -> o.set(i));
 	}
 
 	static void normalize(OpEnvironment ops, RandomAccessibleInterval<FloatType> image2) {
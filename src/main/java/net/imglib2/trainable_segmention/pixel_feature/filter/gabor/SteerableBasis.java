@@ -0,0 +1,181 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.gabor;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import weka.core.matrix.EigenvalueDecomposition;
+import weka.core.matrix.Matrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Approximates a bank of rotated kernels by linear combinations of a few
+ * basis kernels. The response of every kernel is then a per pixel linear
+ * combination of the responses of the basis kernels.
+ * <p>
+ * The basis kernels are the principal components of the kernel bank: the
+ * eigenvectors of the Gram matrix of the kernels, with the largest
+ * eigenvalues. As few basis kernels are used as needed to approximate every
+ * kernel with a relative L2 error below the tolerance.
+ * <p>
+ * The error of the approximated responses is bounded by
+ * {@link #errorBound()} times the largest absolute value of the input image.
+ *
+ * @author Matthias Arzt
+ */
+class SteerableBasis {
+
+	/**
+	 * Eigenvalues below this fraction of the largest eigenvalue are
+	 * considered numerical noise.
+	 */
+	private static final double EPSILON = 1e-9;
+
+	private final List<RandomAccessibleInterval<FloatType>> kernels;
+
+	private final float[][] coefficients;
+
+	private final double errorBound;
+
+	private SteerableBasis(List<RandomAccessibleInterval<FloatType>> kernels, float[][] coefficients, double errorBound) {
+		this.kernels = kernels;
+		this.coefficients = coefficients;
+		this.errorBound = errorBound;
+	}
+
+	/**
+	 * Calculates the basis for the given kernels, which must all have the same
+	 * interval.
+	 */
+	static SteerableBasis of(List<? extends RandomAccessibleInterval<FloatType>> kernels, double tolerance) {
+		RandomAccessibleInterval<FloatType> interval = kernels.get(0);
+		double[][] k = kernels.stream().map(SteerableBasis::toArray).toArray(double[][]::new);
+		int n = k.length;
+		int size = k[0].length;
+		double[][] gram = new double[n][n];
+		for (int a = 0; a < n; a++)
+			for (int b = 0; b < n; b++)
+				gram[a][b] = dot(k[a], k[b]);
+		EigenvalueDecomposition decomposition = new Matrix(gram).eig();
+		double[] eigenvalues = decomposition.getRealEigenvalues();
+		double[][] v = decomposition.getV().getArray();
+		List<Integer> order = new ArrayList<>();
+		IntStream.range(0, n).forEach(order::add);
+		order.sort(Comparator.comparingDouble(j -> -eigenvalues[j]));
+		double largest = eigenvalues[order.get(0)];
+		List<double[]> basis = new ArrayList<>();
+		List<double[]> weights = new ArrayList<>();
+		double[][] residuals = residuals(k, basis, weights);
+		for (int j : order) {
+			if (eigenvalues[j] <= EPSILON * largest)
+				break;
+			// basis = sum_a v[a][j] * k[a] / sqrt(lambda), coefficient of k[a] = v[a][j] * sqrt(lambda)
+			double sqrtLambda = Math.sqrt(eigenvalues[j]);
+			double[] b = new double[size];
+			double[] c = new double[n];
+			for (int a = 0; a < n; a++) {
+				c[a] = v[a][j] * sqrtLambda;
+				for (int i = 0; i < size; i++)
+					b[i] += v[a][j] * k[a][i] / sqrtLambda;
+			}
+			basis.add(b);
+			weights.add(c);
+			residuals = residuals(k, basis, weights);
+			if (maxRelativeError(k, residuals) <= tolerance)
+				break;
+		}
+		List<RandomAccessibleInterval<FloatType>> basisKernels = new ArrayList<>();
+		for (double[] b : basis)
+			basisKernels.add(toImage(b, interval));
+		float[][] coefficients = new float[n][basis.size()];
+		for (int a = 0; a < n; a++)
+			for (int j = 0; j < basis.size(); j++)
+				coefficients[a][j] = (float) weights.get(j)[a];
+		double errorBound = 0;
+		for (double[] residual : residuals)
+			errorBound = Math.max(errorBound, l1Norm(residual));
+		return new SteerableBasis(Collections.unmodifiableList(basisKernels), coefficients, errorBound);
+	}
+
+	/**
+	 * The basis kernels.
+	 */
+	List<RandomAccessibleInterval<FloatType>> kernels() {
+		return kernels;
+	}
+
+	/**
+	 * coefficients()[a][j] is the weight of basis kernel j in the
+	 * approximation of kernel a.
+	 */
+	float[][] coefficients() {
+		return coefficients;
+	}
+
+	/**
+	 * Largest L1 norm of the difference between a kernel and it's
+	 * approximation.
+	 */
+	double errorBound() {
+		return errorBound;
+	}
+
+	private static double[][] residuals(double[][] k, List<double[]> basis, List<double[]> weights) {
+		double[][] residuals = new double[k.length][];
+		for (int a = 0; a < k.length; a++) {
+			double[] residual = k[a].clone();
+			for (int j = 0; j < basis.size(); j++) {
+				double c = weights.get(j)[a];
+				double[] b = basis.get(j);
+				for (int i = 0; i < residual.length; i++)
+					residual[i] -= c * b[i];
+			}
+			residuals[a] = residual;
+		}
+		return residuals;
+	}
+
+	private static double maxRelativeError(double[][] k, double[][] residuals) {
+		double max = 0;
+		for (int a = 0; a < k.length; a++)
+			max = Math.max(max, Math.sqrt(dot(residuals[a], residuals[a]) / dot(k[a], k[a])));
+		return max;
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++)
+			sum += a[i] * b[i];
+		return sum;
+	}
+
+	private static double l1Norm(double[] a) {
+		double sum = 0;
+		for (double value : a)
+			sum += Math.abs(value);
+		return sum;
+	}
+
+	private static double[] toArray(RandomAccessibleInterval<FloatType> kernel) {
+		double[] result = new double[(int) Intervals.numElements(kernel)];
+		Cursor<FloatType> cursor = Views.flatIterable(kernel).cursor();
+		for (int i = 0; i < result.length; i++)
+			result[i] = cursor.next().getRealDouble();
+		return result;
+	}
+
+	private static RandomAccessibleInterval<FloatType> toImage(double[] values, RandomAccessibleInterval<FloatType> interval) {
+		float[] data = new float[values.length];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (float) values[i];
+		return Views.translate(ArrayImgs.floats(data, Intervals.dimensionsAsLongArray(interval)),
+				Intervals.minAsLongArray(interval));
+	}
+}
@@ -0,0 +1,150 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.gauss;
+
+import net.imagej.ops.OpEnvironment;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.img.Img;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.realtransform.AffineTransform;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.trainable_segmention.RevampUtils;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Approximates a gaussian blur with a large sigma, by blurring a downsampled
+ * image.
+ * <p>
+ * The input is downsampled by averaging blocks of factor^n pixels. The
+ * blocks are aligned to the origin, such that the result doesn't depend on
+ * the output interval. The downsampled image is blurred, linearly
+ * interpolated back to full resolution, and finally blurred with a small
+ * sigma of factor / 2, to smooth the kinks of the linear interpolation. The
+ * sigma of the blur on the downsampled image is chosen such that the
+ * variances of the four steps add up to the requested sigma.
+ * <p>
+ * The relative error of the result is about (factor / sigma)^2 / 100. It's
+ * larger for the derivatives of the blurred image.
+ *
+ * @author Matthias Arzt
+ */
+public class PyramidGauss {
+
+	private PyramidGauss() {
+		// prevent from instantiation
+	}
+
+	/**
+	 * Returns the downsampling factor to use for the given sigma, such that the
+	 * relative error stays below the given tolerance. The factor is a power of
+	 * two, one means that the image should be blurred at full resolution.
+	 */
+	public static int factor(double sigma, double tolerance) {
+		if (tolerance <= 0)
+			return 1;
+		double maxFactor = 10 * sigma * Math.sqrt(tolerance);
+		int factor = 1;
+		while (2 * factor <= maxFactor && coarseVariance(sigma, 2 * factor) >= 0.25)
+			factor *= 2;
+		return factor;
+	}
+
+	public static RandomAccessibleInterval<FloatType> gauss(OpEnvironment ops, RandomAccessible<FloatType> input,
+			Interval interval, double sigma, int factor)
+	{
+		int n = interval.numDimensions();
+		double postSigma = 0.5 * factor;
+		Interval upsampledInterval = RevampUtils.gaussRequiredInput(interval, RevampUtils.nCopies(n, postSigma));
+		Interval coarseInterval = coarseInterval(upsampledInterval, factor);
+		double[] coarseSigmas = RevampUtils.nCopies(n, Math.sqrt(coarseVariance(sigma, factor)));
+		Img<FloatType> downsampled = ops.create().img(RevampUtils.gaussRequiredInput(coarseInterval, coarseSigmas), new FloatType());
+		downsample(input, downsampled, factor);
+		RandomAccessibleInterval<FloatType> coarse = RevampUtils.gauss(ops, Views.extendBorder(downsampled), coarseInterval, coarseSigmas);
+		Img<FloatType> upsampled = ops.create().img(upsampledInterval, new FloatType());
+		LoopBuilder.setImages(Views.interval(upsample(coarse, factor), upsampledInterval), upsampled)
+				.forEachPixel((i, o) -> o.set(i));
+		return RevampUtils.gauss(ops, Views.extendBorder(upsampled), interval, RevampUtils.nCopies(n, postSigma));
+	}
+
+	/**
+	 * Returns an interval of the input image, that contains all pixels read by
+	 * {@link #gauss(OpEnvironment, RandomAccessible, Interval, double, int)}.
+	 * The alignment of the blocks is ignored, such that the border is the same
+	 * for every position of the interval.
+	 */
+	public static Interval requiredInput(Interval interval, double sigma, int factor) {
+		int n = interval.numDimensions();
+		if (factor == 1)
+			return RevampUtils.gaussRequiredInput(interval, RevampUtils.nCopies(n, sigma));
+		long postBorder = Gauss3.halfkernelsizes(new double[] { 0.5 * factor })[0] - 1;
+		long coarseBorder = Gauss3.halfkernelsizes(new double[] { Math.sqrt(coarseVariance(sigma, factor)) })[0] - 1;
+		return Intervals.expand(interval, postBorder + factor * (coarseBorder + 2));
+	}
+
+	/**
+	 * Variance of the blur on the downsampled image, in downsampled pixels.
+	 * The variances of block averaging (factor^2 - 1) / 12, linear
+	 * interpolation (about factor^2 / 6) and the final blur (factor^2 / 4) are
+	 * subtracted.
+	 */
+	private static double coarseVariance(double sigma, int factor) {
+		double f2 = factor * factor;
+		double variance = sigma * sigma - (f2 - 1) / 12 - f2 / 6 - f2 / 4;
+		return variance / f2;
+	}
+
+	/**
+	 * Returns the interval of the downsampled image, that is needed to
+	 * interpolate the given interval. The pixel j of the downsampled image is
+	 * centered at j * factor + (factor - 1) / 2.
+	 */
+	private static Interval coarseInterval(Interval interval, int factor) {
+		int n = interval.numDimensions();
+		double offset = 0.5 * (factor - 1);
+		long[] min = new long[n];
+		long[] max = new long[n];
+		for (int d = 0; d < n; d++) {
+			min[d] = (long) Math.floor((interval.min(d) - offset) / factor);
+			max[d] = (long) Math.ceil((interval.max(d) - offset) / factor);
+		}
+		return new FinalInterval(min, max);
+	}
+
+	private static void downsample(RandomAccessible<FloatType> input, RandomAccessibleInterval<FloatType> output, int factor) {
+		int n = output.numDimensions();
+		long[] min = new long[n];
+		long[] max = new long[n];
+		for (int d = 0; d < n; d++) {
+			min[d] = output.min(d) * factor;
+			max[d] = output.max(d) * factor + factor - 1;
+		}
+		Cursor<FloatType> cursor = Views.interval(input, min, max).localizingCursor();
+		RandomAccess<FloatType> ra = output.randomAccess();
+		while (cursor.hasNext()) {
+			float value = cursor.next().get();
+			for (int d = 0; d < n; d++)
+				ra.setPosition(Math.floorDiv(cursor.getLongPosition(d), factor), d);
+			FloatType sum = ra.get();
+			sum.set(sum.get() + value);
+		}
+		float scale = (float) (1 / Math.pow(factor, n));
+		Views.iterable(output).forEach(pixel -> pixel.mul(scale));
+	}
+
+	private static RandomAccessible<FloatType> upsample(RandomAccessibleInterval<FloatType> coarse, int factor) {
+		int n = coarse.numDimensions();
+		AffineTransform transform = new AffineTransform(n);
+		for (int d = 0; d < n; d++) {
+			transform.set(factor, d, d);
+			transform.set(0.5 * (factor - 1), d, n);
+		}
+		return RealViews.affine(Views.interpolate(Views.extendBorder(coarse), new NLinearInterpolatorFactory<>()), transform);
+	}
+}
@@ -0,0 +1,109 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.gauss;
+
+import net.imagej.ops.OpEnvironment;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.trainable_segmention.RevampUtils;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Gaussian blur implemented as recursive (IIR) filter, as described by
+ * Young and van Vliet: "Recursive implementation of the Gaussian filter",
+ * Signal Processing 44 (1995). The cost per pixel is independent of sigma.
+ * <p>
+ * Each line is filtered forward and backward with a third order recursion.
+ * The input is read on the same interval as for {@link
+ * net.imglib2.algorithm.gauss3.Gauss3}, the recursion is initialized with
+ * the first value of the line, as if the input was border extended beyond
+ * it. The result differs from Gauss3 by about 1% of the image contrast.
+ *
+ * @author Matthias Arzt
+ */
+public class RecursiveGauss {
+
+	private RecursiveGauss() {
+		// prevent from instantiation
+	}
+
+	/**
+	 * Sigma must be at least 0.5.
+	 */
+	public static RandomAccessibleInterval<FloatType> gauss(OpEnvironment ops, RandomAccessible<FloatType> input,
+			Interval interval, double sigma)
+	{
+		if (sigma < 0.5)
+			throw new IllegalArgumentException("Recursive gauss requires sigma >= 0.5, but sigma is " + sigma);
+		int n = interval.numDimensions();
+		Interval bufferInterval = RevampUtils.gaussRequiredInput(interval, RevampUtils.nCopies(n, sigma));
+		long[] dims = Intervals.dimensionsAsLongArray(bufferInterval);
+		ArrayImg<FloatType, FloatArray> buffer = ArrayImgs.floats(dims);
+		RandomAccessibleInterval<FloatType> translated = Views.translate(buffer, Intervals.minAsLongArray(bufferInterval));
+		LoopBuilder.setImages(Views.interval(input, bufferInterval), translated).forEachPixel((i, o) -> o.set(i));
+		float[] data = buffer.update(null).getCurrentStorageArray();
+		Coefficients coefficients = new Coefficients(sigma);
+		for (int d = 0; d < n; d++)
+			filterLines(data, dims, d, coefficients);
+		RandomAccessibleInterval<FloatType> output = ops.create().img(interval, new FloatType());
+		LoopBuilder.setImages(Views.interval(translated, interval), output).forEachPixel((i, o) -> o.set(i));
+		return output;
+	}
+
+	private static void filterLines(float[] data, long[] dims, int d, Coefficients c) {
+		int stride = 1;
+		for (int i = 0; i < d; i++)
+			stride *= dims[i];
+		int length = (int) dims[d];
+		int blocks = data.length / (stride * length);
+		for (int block = 0; block < blocks; block++)
+			for (int offset = 0; offset < stride; offset++)
+				filterLine(data, block * stride * length + offset, stride, length, c);
+	}
+
+	private static void filterLine(float[] data, int start, int stride, int length, Coefficients c) {
+		int end = start + (length - 1) * stride;
+		double w1 = data[start], w2 = w1, w3 = w1;
+		for (int i = start; i <= end; i += stride) {
+			double w = c.B * data[i] + c.b1 * w1 + c.b2 * w2 + c.b3 * w3;
+			w3 = w2;
+			w2 = w1;
+			w1 = w;
+			data[i] = (float) w;
+		}
+		double y1 = data[end], y2 = y1, y3 = y1;
+		for (int i = end; i >= start; i -= stride) {
+			double y = c.B * data[i] + c.b1 * y1 + c.b2 * y2 + c.b3 * y3;
+			y3 = y2;
+			y2 = y1;
+			y1 = y;
+			data[i] = (float) y;
+		}
+	}
+
+	/**
+	 * Filter coefficients, b1 to b3 are already divided by b0.
+	 */
+	private static class Coefficients {
+
+		private final double B, b1, b2, b3;
+
+		private Coefficients(double sigma) {
+			double q = sigma >= 2.5 ?
+					0.98711 * sigma - 0.96330 :
+					3.97156 - 4.14554 * Math.sqrt(1 - 0.26891 * sigma);
+			double q2 = q * q;
+			double q3 = q2 * q;
+			double b0 = 1.57825 + 2.44413 * q + 1.4281 * q2 + 0.422205 * q3;
+			b1 = (2.44413 * q + 2.85619 * q2 + 1.26661 * q3) / b0;
+			b2 = -(1.4281 * q2 + 1.26661 * q3) / b0;
+			b3 = 0.422205 * q3 / b0;
+			B = 1 - (b1 + b2 + b3);
+		}
+	}
+}
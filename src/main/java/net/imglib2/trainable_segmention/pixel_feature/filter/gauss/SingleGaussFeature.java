@@ -1,11 +1,13 @@
 package net.imglib2.trainable_segmention.pixel_feature.filter.gauss;
 
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.algorithm.gauss3.Gauss3;
-import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.loops.LoopBuilder;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
 import net.imglib2.type.numeric.real.FloatType;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -26,6 +28,21 @@ public class SingleGaussFeature extends AbstractFeatureOp {
 			return 1;
 		}
 
+	@Override
+	public double cost() {
+		return 1 + sigma;
+	}
+
+	@Override
+	public List<Intermediate> intermediates() {
+		return Collections.singletonList(Intermediate.gauss(sigma * 0.4));
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return FeatureInput.gaussRequiredInput(outputInterval, sigma * 0.4);
+	}
+
 	@Override
 	public List<String> attributeLabels() {
 			return Collections.singletonList("Gaussian_blur_" + sigma);
@@ -33,10 +50,12 @@ public class SingleGaussFeature extends AbstractFeatureOp {
 
 	@Override
 	public void apply(RandomAccessible<FloatType> input, List<RandomAccessibleInterval<FloatType>> output) {
-		try {
-			Gauss3.gauss(sigma * 0.4, input, output.get(0));
-		} catch (IncompatibleTypeException e) {
-			throw new RuntimeException(e);
-		}
+		apply(new FeatureInput(ops(), input, output.get(0)), output);
+	}
+
+	@Override
+	public void apply(FeatureInput input, List<RandomAccessibleInterval<FloatType>> output) {
+		RandomAccessibleInterval<FloatType> target = output.get(0);
+		LoopBuilder.setImages(input.gauss(sigma * 0.4, target), target).forEachPixel((i, o) -> o.set(i));
 	}
 }
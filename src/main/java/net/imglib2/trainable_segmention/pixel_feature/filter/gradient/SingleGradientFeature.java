@@ -4,12 +4,12 @@ import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.trainable_segmention.RevampUtils;
-import net.imglib2.algorithm.gauss3.Gauss3;
 import net.imglib2.algorithm.gradient.PartialDerivative;
 import net.imglib2.converter.Converters;
-import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.type.operators.SetZero;
 import net.imglib2.util.Intervals;
@@ -36,19 +36,39 @@ public class SingleGradientFeature extends AbstractFeatureOp {
 
 	@Override
 	public void apply(RandomAccessible<FloatType> in, List<RandomAccessibleInterval<FloatType>> out) {
+		apply(new FeatureInput(ops(), in, out.get(0)), out);
+	}
+
+	@Override
+	public void apply(FeatureInput in, List<RandomAccessibleInterval<FloatType>> out) {
 		calculate(in, out.get(0));
 	}
 
+	@Override
+	public double cost() {
+		return 2 + sigma;
+	}
+
+	@Override
+	public List<Intermediate> intermediates() {
+		return Collections.singletonList(Intermediate.gauss(0.4 * sigma));
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return FeatureInput.gaussRequiredInput(outputInterval, 0.4 * sigma);
+	}
+
 	@Override
 	public List<String> attributeLabels() {
 		return Collections.singletonList("Gradient_filter_" + sigma);
 	}
 
-	private void calculate(RandomAccessible<FloatType> in, RandomAccessibleInterval<FloatType> out) {
+	private void calculate(FeatureInput in, RandomAccessibleInterval<FloatType> out) {
 		int numDimensions = out.numDimensions();
 
 		Interval expand = Intervals.expand(out, RevampUtils.nCopies(numDimensions, 1));
-		RandomAccessibleInterval<FloatType> blurred = gauss(in, expand, 0.4 * sigma);
+		RandomAccessibleInterval<FloatType> blurred = in.gauss(0.4 * sigma, expand);
 		RandomAccessibleInterval<FloatType> derivative = ops().create().img(out);
 
 		setZero(out);
@@ -59,16 +79,6 @@ public class SingleGradientFeature extends AbstractFeatureOp {
 		Views.iterable(out).forEach(x -> x.set((float) Math.sqrt(x.get())));
 	}
 
-	private RandomAccessibleInterval<FloatType> gauss(RandomAccessible<FloatType> in, Interval outputInterval, double sigma) {
-		RandomAccessibleInterval<FloatType> blurred = ops().create().img(outputInterval, new FloatType());
-		try {
-			Gauss3.gauss(sigma, in, blurred);
-		} catch (IncompatibleTypeException e) {
-			throw new RuntimeException(e);
-		}
-		return blurred;
-	}
-
 	private void setZero(RandomAccessibleInterval<? extends SetZero> out) {
 		Views.iterable(out).forEach(SetZero::setZero);
 	}
@@ -3,17 +3,18 @@ package net.imglib2.trainable_segmention.pixel_feature.filter.gradient;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.trainable_segmention.RevampUtils;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
 import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
 import net.imglib2.type.numeric.real.FloatType;
-import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.view.Views;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.ToDoubleFunction;
@@ -35,9 +36,29 @@ public class SingleSobelGradientFeature extends AbstractFeatureOp {
 
 	@Override
 	public void apply(RandomAccessible<FloatType> in, List<RandomAccessibleInterval<FloatType>> out) {
+		apply(new FeatureInput(ops(), in, out.get(0)), out);
+	}
+
+	@Override
+	public void apply(FeatureInput in, List<RandomAccessibleInterval<FloatType>> out) {
 		calculate(in, out.get(0));
 	}
 
+	@Override
+	public double cost() {
+		return 3 + sigma;
+	}
+
+	@Override
+	public List<Intermediate> intermediates() {
+		return Arrays.asList(Intermediate.sobelX(0.4 * sigma), Intermediate.sobelY(0.4 * sigma));
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return FeatureInput.gaussRequiredInput(outputInterval, 0.4 * sigma);
+	}
+
 	@Override
 	public List<String> attributeLabels() {
 		return Collections.singletonList("Sobel_filter_" + sigma);
@@ -48,16 +69,9 @@ public class SingleSobelGradientFeature extends AbstractFeatureOp {
 		return globals.numDimensions() == 2;
 	}
 
-	private void calculate(RandomAccessible<FloatType> in, RandomAccessibleInterval<FloatType> out) {
-		double[] sigmas = {0.4 * sigma, 0.4 * sigma};
-
-		Interval dxInputInterval = RevampUtils.deriveXRequiredInput(out);
-		Interval dyInputInterval = RevampUtils.deriveYRequiredInput(out);
-		Interval blurredInterval = Intervals.union(dxInputInterval, dyInputInterval);
-
-		RandomAccessibleInterval<FloatType> blurred = RevampUtils.gauss(ops(), in, blurredInterval, sigmas);
-		RandomAccessibleInterval<FloatType> dx = RevampUtils.deriveX(ops(), blurred, out);
-		RandomAccessibleInterval<FloatType> dy = RevampUtils.deriveY(ops(), blurred, out);
+	private void calculate(FeatureInput in, RandomAccessibleInterval<FloatType> out) {
+		RandomAccessibleInterval<FloatType> dx = in.sobelX(0.4 * sigma, out);
+		RandomAccessibleInterval<FloatType> dy = in.sobelY(0.4 * sigma, out);
 		RandomAccessible<Pair<FloatType, FloatType>> derivatives = Views.pair(dx, dy);
 		mapToFloat(derivatives, out, input -> norm2(input.getA().get(), input.getB().get()));
 	}
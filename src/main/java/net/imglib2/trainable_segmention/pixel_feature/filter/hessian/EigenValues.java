@@ -42,6 +42,169 @@ public class EigenValues {
 		}
 	}
 
+	/**
+	 * Calculates the eigenvalues of many symmetric 3x3 matrices. The i-th
+	 * matrix is given by the i-th elements of the component arrays, its
+	 * eigenvalues are written to x[i], y[i] and z[i], in the same order as
+	 * {@link #eigenvalues(Vector3D, double, double, double, double, double, double)}
+	 * does.
+	 */
+	public static void eigenvalues(final float[] a11, final float[] a12, final float[] a13,
+			final float[] a22, final float[] a23, final float[] a33,
+			final float[] x, final float[] y, final float[] z)
+	{
+		for (int i = 0; i < x.length; i++) {
+			final double a = -(a11[i] + (double) a22[i] + a33[i]);
+			final double b = a11[i] * (double) a22[i] + a11[i] * (double) a33[i] + a22[i] * (double) a33[i] -
+					a12[i] * (double) a12[i] - a13[i] * (double) a13[i] - a23[i] * (double) a23[i];
+			final double c = a11[i] * (a23[i] * (double) a23[i] - a22[i] * (double) a33[i]) +
+					a22[i] * (double) a13[i] * a13[i] + a33[i] * (double) a12[i] * a12[i] -
+					2 * (double) a12[i] * a13[i] * a23[i];
+			final double q = (a * a - 3 * b) / 9;
+			final double r = (a * a * a - 4.5 * a * b + 13.5 * c) / 27;
+			final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
+			final double sqrtq3 = sqrtq * sqrtq * sqrtq;
+			if (sqrtq3 == 0) {
+				x[i] = 0;
+				y[i] = 0;
+				z[i] = 0;
+			}
+			else {
+				final double rsqq3 = r / sqrtq3;
+				final double angle = (rsqq3 * rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
+				x[i] = (float) (-2 * sqrtq * Math.cos(angle / 3) - a / 3);
+				y[i] = (float) (-2 * sqrtq * Math.cos((angle + TWOPI) / 3) - a / 3);
+				z[i] = (float) (-2 * sqrtq * Math.cos((angle - TWOPI) / 3) - a / 3);
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #eigenvalues(float[], float[], float[], float[], float[], float[], float[], float[], float[])}
+	 * for double precision.
+	 */
+	public static void eigenvalues(final double[] a11, final double[] a12, final double[] a13,
+			final double[] a22, final double[] a23, final double[] a33,
+			final double[] x, final double[] y, final double[] z)
+	{
+		for (int i = 0; i < x.length; i++) {
+			final double a = -(a11[i] + a22[i] + a33[i]);
+			final double b = a11[i] * a22[i] + a11[i] * a33[i] + a22[i] * a33[i] -
+					a12[i] * a12[i] - a13[i] * a13[i] - a23[i] * a23[i];
+			final double c = a11[i] * (a23[i] * a23[i] - a22[i] * a33[i]) + a22[i] * a13[i] * a13[i] +
+					a33[i] * a12[i] * a12[i] - 2 * a12[i] * a13[i] * a23[i];
+			final double q = (a * a - 3 * b) / 9;
+			final double r = (a * a * a - 4.5 * a * b + 13.5 * c) / 27;
+			final double sqrtq = (q > 0) ? Math.sqrt(q) : 0;
+			final double sqrtq3 = sqrtq * sqrtq * sqrtq;
+			if (sqrtq3 == 0) {
+				x[i] = 0;
+				y[i] = 0;
+				z[i] = 0;
+			}
+			else {
+				final double rsqq3 = r / sqrtq3;
+				final double angle = (rsqq3 * rsqq3 <= 1) ? Math.acos(rsqq3) : Math.acos(rsqq3 < 0 ? -1 : 1);
+				x[i] = -2 * sqrtq * Math.cos(angle / 3) - a / 3;
+				y[i] = -2 * sqrtq * Math.cos((angle + TWOPI) / 3) - a / 3;
+				z[i] = -2 * sqrtq * Math.cos((angle - TWOPI) / 3) - a / 3;
+			}
+		}
+	}
+
+	/**
+	 * Calculates the eigenvalues of many symmetric 2x2 matrices, with the
+	 * closed form mean +/- sqrt(((a11 - a22) / 2)^2 + a12^2). The larger
+	 * eigenvalue is written to x, the smaller to y.
+	 */
+	public static void eigenvalues(final float[] a11, final float[] a12, final float[] a22,
+			final float[] x, final float[] y)
+	{
+		for (int i = 0; i < x.length; i++) {
+			final double mean = 0.5 * (a11[i] + (double) a22[i]);
+			final double halfDifference = 0.5 * (a11[i] - (double) a22[i]);
+			final double d = Math.sqrt(halfDifference * halfDifference + a12[i] * (double) a12[i]);
+			x[i] = (float) (mean + d);
+			y[i] = (float) (mean - d);
+		}
+	}
+
+	/**
+	 * Same as {@link #eigenvalues(float[], float[], float[], float[], float[])}
+	 * for double precision.
+	 */
+	public static void eigenvalues(final double[] a11, final double[] a12, final double[] a22,
+			final double[] x, final double[] y)
+	{
+		for (int i = 0; i < x.length; i++) {
+			final double mean = 0.5 * (a11[i] + a22[i]);
+			final double halfDifference = 0.5 * (a11[i] - a22[i]);
+			final double d = Math.sqrt(halfDifference * halfDifference + a12[i] * a12[i]);
+			x[i] = mean + d;
+			y[i] = mean - d;
+		}
+	}
+
+	/**
+	 * Replaces all values of the given arrays by their absolute values.
+	 */
+	public static void abs(final float[]... arrays) {
+		for (float[] array : arrays)
+			for (int i = 0; i < array.length; i++)
+				array[i] = Math.abs(array[i]);
+	}
+
+	public static void abs(final double[]... arrays) {
+		for (double[] array : arrays)
+			for (int i = 0; i < array.length; i++)
+				array[i] = Math.abs(array[i]);
+	}
+
+	/**
+	 * Sorts the values x[i], y[i], z[i] in descending order, for all i. The
+	 * sorting network uses min and max only, without branches.
+	 */
+	public static void sort(final float[] x, final float[] y, final float[] z) {
+		for (int i = 0; i < x.length; i++) {
+			final float a = Math.max(x[i], y[i]);
+			final float b = Math.min(x[i], y[i]);
+			final float c = Math.min(a, z[i]);
+			x[i] = Math.max(a, z[i]);
+			y[i] = Math.max(b, c);
+			z[i] = Math.min(b, c);
+		}
+	}
+
+	public static void sort(final double[] x, final double[] y, final double[] z) {
+		for (int i = 0; i < x.length; i++) {
+			final double a = Math.max(x[i], y[i]);
+			final double b = Math.min(x[i], y[i]);
+			final double c = Math.min(a, z[i]);
+			x[i] = Math.max(a, z[i]);
+			y[i] = Math.max(b, c);
+			z[i] = Math.min(b, c);
+		}
+	}
+
+	/**
+	 * Sorts the values x[i], y[i] in descending order, for all i.
+	 */
+	public static void sort(final float[] x, final float[] y) {
+		for (int i = 0; i < x.length; i++) {
+			final float a = Math.max(x[i], y[i]);
+			y[i] = Math.min(x[i], y[i]);
+			x[i] = a;
+		}
+	}
+
+	public static void sort(final double[] x, final double[] y) {
+		for (int i = 0; i < x.length; i++) {
+			final double a = Math.max(x[i], y[i]);
+			y[i] = Math.min(x[i], y[i]);
+			x[i] = a;
+		}
+	}
+
 	public static class Vector3D {
 		public double x, y, z;
 
@@ -0,0 +1,130 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.hessian;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Calculates the second derivatives of a gaussian blurred 2D image, exactly
+ * as {@link SingleHessianFeature} does by applying Sobel filters twice to the
+ * blurred image, but with combined separable kernels.
+ * <p>
+ * The Sobel filter "deriveX" smooths with [1 2 1] along X and takes the
+ * difference [1 0 -1] along Y, "deriveY" vice versa. Gauss, smoothing and
+ * difference kernels along one axis are convolved into one kernel per axis.
+ * The input is filtered line by line along X with three kernels. Only the
+ * last lines filtered along X are kept, as many as the kernel is long, and
+ * the result along Y is calculated from them. No blurred image, first or
+ * second derivative images are allocated, the memory needed is proportional
+ * to the kernel size times the image width.
+ *
+ * @author Matthias Arzt
+ */
+class FusedSecondDerivatives {
+
+	private static final double[] SMOOTH = { 1, 2, 1 };
+
+	private static final double[] DIFFERENCE = { 1, 0, -1 };
+
+	private FusedSecondDerivatives() {
+		// prevent from instantiation
+	}
+
+	interface LineOperation {
+
+		/**
+		 * Receives the second derivatives of line y, counted from the top of
+		 * the interval. The arrays are reused for the next line.
+		 */
+		void apply(int y, float[] dxx, float[] dxy, float[] dyy);
+	}
+
+	/**
+	 * Calculates dxx, dxy and dyy of the input blurred with the given sigma,
+	 * and passes them line by line to the given operation.
+	 */
+	static void calculate(RandomAccessible<FloatType> input, Interval output, double sigma, LineOperation operation) {
+		if (output.numDimensions() != 2)
+			throw new IllegalArgumentException("Only two dimensional images supported.");
+		double[] gauss = fullKernel(Gauss3.halfkernels(new double[] { sigma })[0]);
+		// NB: dxx = (SS along X, DD along Y), dxy = (SD, SD), dyy = (DD, SS)
+		double[] ss = convolve(gauss, convolve(SMOOTH, SMOOTH));
+		double[] sd = convolve(gauss, convolve(SMOOTH, DIFFERENCE));
+		double[] dd = convolve(gauss, convolve(DIFFERENCE, DIFFERENCE));
+		int size = ss.length;
+		int border = size / 2;
+		int width = (int) output.dimension(0);
+		int height = (int) output.dimension(1);
+		int inputWidth = width + 2 * border;
+		int inputHeight = height + 2 * border;
+		RandomAccess<FloatType> ra = input.randomAccess(Intervals.expand(output, border));
+		float[] in = new float[inputWidth];
+		// NB: The last input lines filtered along X, line y is stored at y % size.
+		float[][] xss = new float[size][width];
+		float[][] xsd = new float[size][width];
+		float[][] xdd = new float[size][width];
+		float[] dxx = new float[width];
+		float[] dxy = new float[width];
+		float[] dyy = new float[width];
+		for (int line = 0; line < inputHeight; line++) {
+			read(ra, output.min(0) - border, output.min(1) - border + line, in);
+			int slot = line % size;
+			for (int x = 0; x < width; x++) {
+				double a = 0, b = 0, c = 0;
+				for (int k = 0; k < size; k++) {
+					float value = in[x + k];
+					a += ss[k] * value;
+					b += sd[k] * value;
+					c += dd[k] * value;
+				}
+				xss[slot][x] = (float) a;
+				xsd[slot][x] = (float) b;
+				xdd[slot][x] = (float) c;
+			}
+			int y = line - size + 1;
+			if (y < 0)
+				continue;
+			for (int x = 0; x < width; x++) {
+				double sxx = 0, sxy = 0, syy = 0;
+				for (int k = 0; k < size; k++) {
+					int row = (y + k) % size;
+					sxx += dd[k] * xss[row][x];
+					sxy += sd[k] * xsd[row][x];
+					syy += ss[k] * xdd[row][x];
+				}
+				dxx[x] = (float) sxx;
+				dxy[x] = (float) sxy;
+				dyy[x] = (float) syy;
+			}
+			operation.apply(y, dxx, dxy, dyy);
+		}
+	}
+
+	private static void read(RandomAccess<FloatType> ra, long x, long y, float[] line) {
+		ra.setPosition(x, 0);
+		ra.setPosition(y, 1);
+		for (int i = 0; i < line.length; i++) {
+			line[i] = ra.get().get();
+			ra.fwd(0);
+		}
+	}
+
+	private static double[] fullKernel(double[] halfKernel) {
+		int center = halfKernel.length - 1;
+		double[] kernel = new double[2 * center + 1];
+		for (int i = 0; i < kernel.length; i++)
+			kernel[i] = halfKernel[Math.abs(i - center)];
+		return kernel;
+	}
+
+	private static double[] convolve(double[] a, double[] b) {
+		double[] result = new double[a.length + b.length - 1];
+		for (int i = 0; i < a.length; i++)
+			for (int j = 0; j < b.length; j++)
+				result[i + j] += a[i] * b[j];
+		return result;
+	}
+}
@@ -1,21 +1,26 @@
 package net.imglib2.trainable_segmention.pixel_feature.filter.hessian;
 
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.trainable_segmention.RevampUtils;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.loops.LoopBuilder;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
-import net.imglib2.algorithm.gradient.PartialDerivative;
-import net.imglib2.img.Img;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureTask;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
 import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
-import net.imglib2.view.composite.RealComposite;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -32,6 +37,12 @@ public class SingleHessian3DFeature extends AbstractFeatureOp {
 	@Parameter
 	boolean absoluteValues = true;
 
+	/**
+	 * Number of voxels in a block, if the blocks don't need to be smaller for
+	 * parallelization.
+	 */
+	private static final long BLOCK_SIZE = 1 << 20;
+
 	@Override
 	public int count() {
 		return 3;
@@ -45,72 +56,109 @@ public class SingleHessian3DFeature extends AbstractFeatureOp {
 
 	@Override
 	public void apply(RandomAccessible<FloatType> input, List<RandomAccessibleInterval<FloatType>> output) {
-		calculateHessianOnChannel(input, Views.stack(output), sigma);
+		apply(new FeatureInput(ops(), input, output.get(0)), output);
 	}
 
 	@Override
-	public boolean checkGlobalSettings(GlobalSettings globals) {
-		return globals.numDimensions() == 3;
+	public void apply(FeatureInput input, List<RandomAccessibleInterval<FloatType>> output) {
+		calculateHessianOnChannel(input, output, sigma);
 	}
 
-	private void calculateHessianOnChannel(RandomAccessible<FloatType> image, RandomAccessibleInterval<FloatType> out, double sigma) {
-		double[] sigmas = {0.4 * sigma, 0.4 * sigma, 0.4 * sigma};
-
-		Interval secondDerivativeInterval = RevampUtils.removeLastDimension(out);
-		Interval firstDerivativeInterval = Intervals.expand(secondDerivativeInterval, 1);
-		Interval blurredInterval = Intervals.expand(firstDerivativeInterval, 1);
-
-		RandomAccessibleInterval<FloatType> blurred = RevampUtils.gauss(ops(), image, blurredInterval, sigmas);
-		RandomAccessibleInterval<FloatType> dx = derive(blurred, firstDerivativeInterval, 0);
-		RandomAccessibleInterval<FloatType> dy = derive(blurred, firstDerivativeInterval, 1);
-		RandomAccessibleInterval<FloatType> dz = derive(blurred, firstDerivativeInterval, 2);
-		RandomAccessibleInterval<RealComposite<FloatType>> secondDerivatives =
-				calculateSecondDerivatives(secondDerivativeInterval, dx, dy, dz);
+	@Override
+	public double cost() {
+		return 20 + sigma;
+	}
 
-		RandomAccessibleInterval<RealComposite<FloatType>> eigenValues = Views.collapseReal(out);
-		Views.interval(Views.pair(secondDerivatives, eigenValues), eigenValues).forEach(p -> calculateEigenValues(p.getA(), p.getB()));
+	@Override
+	public List<Intermediate> intermediates() {
+		return Collections.singletonList(Intermediate.gauss(0.4 * sigma));
 	}
 
-	private RandomAccessibleInterval<RealComposite<FloatType>> calculateSecondDerivatives(
-			Interval secondDerivativeInterval,
-			RandomAccessibleInterval<FloatType> dx,
-			RandomAccessibleInterval<FloatType> dy,
-			RandomAccessibleInterval<FloatType> dz)
-	{
-		Img<FloatType> secondDerivatives = ops().create().img(RevampUtils.appendDimensionToInterval(secondDerivativeInterval, 0, 5), new FloatType());
-		List<RandomAccessibleInterval<FloatType>> slices = RevampUtils.slices(secondDerivatives);
-		PartialDerivative.gradientCentralDifference(dx, slices.get(0), 0);
-		PartialDerivative.gradientCentralDifference(dx, slices.get(1), 1);
-		PartialDerivative.gradientCentralDifference(dx, slices.get(2), 2);
-		PartialDerivative.gradientCentralDifference(dy, slices.get(3), 1);
-		PartialDerivative.gradientCentralDifference(dy, slices.get(4), 2);
-		PartialDerivative.gradientCentralDifference(dz, slices.get(5), 2);
-		return Views.collapseReal(secondDerivatives);
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return FeatureInput.gaussRequiredInput(outputInterval, 0.4 * sigma);
 	}
 
-	private void calculateEigenValues(RealComposite<FloatType> derivatives, RealComposite<FloatType> eigenValues) {
-		EigenValues.Vector3D v = new EigenValues.Vector3D();
-		EigenValues.eigenvalues(v,
-				derivatives.get(0).getRealDouble(),
-				derivatives.get(1).getRealDouble(),
-				derivatives.get(2).getRealDouble(),
-				derivatives.get(3).getRealDouble(),
-				derivatives.get(4).getRealDouble(),
-				derivatives.get(5).getRealDouble());
-		if(absoluteValues)
-			EigenValues.abs(v);
-		EigenValues.sort(v);
-		eigenValues.get(0).setReal(v.x);
-		eigenValues.get(1).setReal(v.y);
-		eigenValues.get(2).setReal(v.z);
+	@Override
+	public boolean checkGlobalSettings(GlobalSettings globals) {
+		return globals.numDimensions() == 3;
 	}
 
+	/**
+	 * The output is split into blocks of z-planes, that are calculated in
+	 * parallel, with the threads that aren't used by other features, see
+	 * {@link FeatureTask#availableThreads}. For each block, the blurred image
+	 * is copied into a float array, and the second derivatives are calculated
+	 * per voxel as central differences of central differences. The float arithmetic equals
+	 * {@link net.imglib2.algorithm.gradient.PartialDerivative#gradientCentralDifference}
+	 * applied twice. The eigenvalues are calculated plane by plane with the
+	 * batch methods of {@link EigenValues}.
+	 */
+	private void calculateHessianOnChannel(FeatureInput image, List<RandomAccessibleInterval<FloatType>> out, double sigma) {
+		Interval interval = new FinalInterval(out.get(0));
+		RandomAccessibleInterval<FloatType> blurred = image.gauss(0.4 * sigma, Intervals.expand(interval, 2));
+		long planeSize = interval.dimension(0) * interval.dimension(1);
+		long depth = interval.dimension(2);
+		// NB: Only split into blocks for the threads, that aren't used by other features.
+		int threads = FeatureTask.availableThreads(image.numThreads());
+		long planesPerBlock = Math.max(1, Math.min(BLOCK_SIZE / planeSize,
+				(depth + 4 * threads - 1) / (4 * threads)));
+		List<FeatureTask> tasks = new ArrayList<>();
+		for (long z = interval.min(2); z <= interval.max(2); z += planesPerBlock) {
+			long[] min = Intervals.minAsLongArray(interval);
+			long[] max = Intervals.maxAsLongArray(interval);
+			min[2] = z;
+			max[2] = Math.min(z + planesPerBlock - 1, interval.max(2));
+			Interval block = new FinalInterval(min, max);
+			tasks.add(new FeatureTask(Intervals.numElements(block), () -> calculateBlock(blurred, out, block)));
+		}
+		FeatureTask.runAll(tasks, image.executor(), image.numThreads());
+	}
 
-	// -- Helper methods --
+	private void calculateBlock(RandomAccessibleInterval<FloatType> blurred, List<RandomAccessibleInterval<FloatType>> out, Interval block) {
+		int width = (int) block.dimension(0) + 4;
+		int height = (int) block.dimension(1) + 4;
+		int depth = (int) block.dimension(2) + 4;
+		float[] b = new float[width * height * depth];
+		Cursor<FloatType> cursor = Views.flatIterable(Views.interval(blurred, Intervals.expand(block, 2))).cursor();
+		for (int i = 0; i < b.length; i++)
+			b[i] = cursor.next().get();
+		int size = (int) Intervals.numElements(block);
+		float[][] eigenValues = { new float[size], new float[size], new float[size] };
+		int planeSize = (width - 4) * (height - 4);
+		float[][] d = new float[6][planeSize];
+		float[][] e = { new float[planeSize], new float[planeSize], new float[planeSize] };
+		int sx = 1, sy = width, sz = width * height;
+		for (int z = 2; z < depth - 2; z++) {
+			int index = 0;
+			for (int y = 2; y < height - 2; y++)
+				for (int x = 2, p = z * sz + y * sy + x; x < width - 2; x++, p++, index++) {
+					d[0][index] = (derive(b, p + sx, sx) - derive(b, p - sx, sx)) * 0.5f;
+					d[1][index] = (derive(b, p + sy, sx) - derive(b, p - sy, sx)) * 0.5f;
+					d[2][index] = (derive(b, p + sz, sx) - derive(b, p - sz, sx)) * 0.5f;
+					d[3][index] = (derive(b, p + sy, sy) - derive(b, p - sy, sy)) * 0.5f;
+					d[4][index] = (derive(b, p + sz, sy) - derive(b, p - sz, sy)) * 0.5f;
+					d[5][index] = (derive(b, p + sz, sz) - derive(b, p - sz, sz)) * 0.5f;
+				}
+			EigenValues.eigenvalues(d[0], d[1], d[2], d[3], d[4], d[5], e[0], e[1], e[2]);
+			if (absoluteValues)
+				EigenValues.abs(e);
+			EigenValues.sort(e[0], e[1], e[2]);
+			for (int i = 0; i < 3; i++)
+				System.arraycopy(e[i], 0, eigenValues[i], (z - 2) * planeSize, planeSize);
+		}
+		for (int i = 0; i < 3; i++) {
+			RandomAccessibleInterval<FloatType> source = Views.translate(
+					ArrayImgs.floats(eigenValues[i], Intervals.dimensionsAsLongArray(block)), Intervals.minAsLongArray(block));
+			LoopBuilder.setImages(source, Views.interval(out.get(i), block)).forEachPixel((s, t) -> t.set(s));
+		}
+	}
 
-	private RandomAccessibleInterval<FloatType> derive(RandomAccessible<FloatType> source, Interval interval, int dimension) {
-		Img<FloatType> target = ops().create().img(interval, new FloatType());
-		PartialDerivative.gradientCentralDifference(source, target, dimension);
-		return target;
+	/**
+	 * Central difference at the given position of the array, with the given
+	 * stride.
+	 */
+	private static float derive(float[] values, int position, int stride) {
+		return (values[position + stride] - values[position - stride]) * 0.5f;
 	}
 }
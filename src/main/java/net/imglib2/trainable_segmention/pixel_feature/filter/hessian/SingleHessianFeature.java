@@ -1,15 +1,17 @@
 package net.imglib2.trainable_segmention.pixel_feature.filter.hessian;
 
 import net.imglib2.*;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.trainable_segmention.RevampUtils;
 import net.imglib2.img.Img;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
 import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
-import net.imglib2.view.composite.RealComposite;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
@@ -33,8 +35,12 @@ public class SingleHessianFeature extends AbstractFeatureOp {
 
 	@Override
 	public void apply(RandomAccessible<FloatType> in, List<RandomAccessibleInterval<FloatType>> out) {
-		RandomAccessibleInterval<FloatType> features = Views.stack(out);
-		calculateHessianOnChannel(in, features, sigma);
+		apply(new FeatureInput(ops(), in, out.get(0)), out);
+	}
+
+	@Override
+	public void apply(FeatureInput in, List<RandomAccessibleInterval<FloatType>> out) {
+		calculateHessianOnChannel(in, out, sigma);
 	}
 
 	List<String> LABELS = Arrays.asList("", "_Trace", "_Determinant", "_Eigenvalue_1", "_Eigenvalue_2",
@@ -45,6 +51,21 @@ public class SingleHessianFeature extends AbstractFeatureOp {
 		return LABELS.stream().map(x -> "Hessian" + x + "_" + sigma).collect(Collectors.toList());
 	}
 
+	@Override
+	public double cost() {
+		return 12 + sigma;
+	}
+
+	@Override
+	public List<Intermediate> intermediates() {
+		return Arrays.asList(Intermediate.sobelX(0.4 * sigma), Intermediate.sobelY(0.4 * sigma));
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return FeatureInput.gaussRequiredInput(outputInterval, 0.4 * sigma);
+	}
+
 	@Override
 	public boolean checkGlobalSettings(GlobalSettings globals) {
 		return globals.numDimensions() == 2;
@@ -61,79 +82,106 @@ public class SingleHessianFeature extends AbstractFeatureOp {
 
 	public RandomAccessibleInterval<FloatType> calculateHessianOnChannel(Img<FloatType> image, double sigma) {
 		Img<FloatType> features = ops().create().img(RevampUtils.appendDimensionToInterval(image, 0, 7), new FloatType());
-		calculateHessianOnChannel(Views.extendBorder(image), features, sigma);
+		calculateHessianOnChannel(new FeatureInput(ops(), Views.extendBorder(image), image), RevampUtils.slices(features), sigma);
 		return features;
 	}
 
-	private void calculateHessianOnChannel(RandomAccessible<FloatType> image, RandomAccessibleInterval<FloatType> out, double sigma) {
-		double[] sigmas = {0.4 * sigma, 0.4 * sigma};
-
-		Interval secondDerivativeInterval = RevampUtils.removeLastDimension(out);
-		Interval firstDerivativeInterval = Intervals.union(
-				RevampUtils.deriveXRequiredInput(secondDerivativeInterval), RevampUtils.deriveYRequiredInput(secondDerivativeInterval));
-		Interval blurredInterval = Intervals.union(
-				RevampUtils.deriveXRequiredInput(firstDerivativeInterval), RevampUtils.deriveYRequiredInput(firstDerivativeInterval));
-
-		RandomAccessibleInterval<FloatType> blurred = RevampUtils.gauss(ops(), image, blurredInterval, sigmas);
-		RandomAccessibleInterval<FloatType> dx = RevampUtils.deriveX(ops(), blurred, firstDerivativeInterval);
-		RandomAccessibleInterval<FloatType> dy = RevampUtils.deriveY(ops(), blurred, firstDerivativeInterval);
-		RandomAccess<FloatType> dxx = RevampUtils.deriveX(ops(), dx, secondDerivativeInterval).randomAccess();
-		RandomAccess<FloatType> dxy = RevampUtils.deriveY(ops(), dx, secondDerivativeInterval).randomAccess();
-		RandomAccess<FloatType> dyy = RevampUtils.deriveY(ops(), dy, secondDerivativeInterval).randomAccess();
-
-		Cursor<RealComposite<FloatType>> cursor = Views.iterable(Views.collapseReal(out)).cursor();
-		while (cursor.hasNext()) {
-			cursor.next();
-			dxx.setPosition(cursor);
-			dxy.setPosition(cursor);
-			dyy.setPosition(cursor);
-			float s_xx = dxx.get().get();
-			float s_xy = dxy.get().get();
-			float s_yy = dyy.get().get();
-			calculateHessianPerPixel(cursor.get(), s_xx, s_xy, s_yy);
+	private void calculateHessianOnChannel(FeatureInput image, List<RandomAccessibleInterval<FloatType>> outputs, double sigma) {
+		Interval secondDerivativeInterval = new FinalInterval(outputs.get(0));
+		int width = (int) secondDerivativeInterval.dimension(0);
+		LineWriter writer = new LineWriter(outputs, width);
+		if (image.fusedDerivatives()) {
+			FusedSecondDerivatives.calculate(image.original(), secondDerivativeInterval, 0.4 * sigma,
+					(y, dxx, dxy, dyy) -> writer.write(dxx, dxy, dyy, 0));
+		}
+		else {
+			Interval firstDerivativeInterval = Intervals.union(
+					RevampUtils.deriveXRequiredInput(secondDerivativeInterval), RevampUtils.deriveYRequiredInput(secondDerivativeInterval));
+			RandomAccessibleInterval<FloatType> dx = image.sobelX(0.4 * sigma, firstDerivativeInterval);
+			RandomAccessibleInterval<FloatType> dy = image.sobelY(0.4 * sigma, firstDerivativeInterval);
+			int size = (int) Intervals.numElements(secondDerivativeInterval);
+			float[] dxx = new float[size];
+			float[] dxy = new float[size];
+			float[] dyy = new float[size];
+			RevampUtils.deriveX(ops(), dx, wrap(dxx, secondDerivativeInterval));
+			RevampUtils.deriveY(ops(), dx, wrap(dxy, secondDerivativeInterval));
+			RevampUtils.deriveY(ops(), dy, wrap(dyy, secondDerivativeInterval));
+			for (int offset = 0; offset < size; offset += width)
+				writer.write(dxx, dxy, dyy, offset);
 		}
 	}
 
-	private static void calculateHessianPerPixel(RealComposite<FloatType> output,
-												float s_xx, float s_xy, float s_yy)
+	private static RandomAccessibleInterval<FloatType> wrap(float[] values, Interval interval) {
+		return Views.translate(ArrayImgs.floats(values, Intervals.dimensionsAsLongArray(interval)),
+				Intervals.minAsLongArray(interval));
+	}
+
+	/**
+	 * Calculates the features of one line at a time into small float arrays,
+	 * and writes them to the outputs with flat cursors. The outputs are
+	 * usually slices of the feature stack, so writing into their backing
+	 * arrays directly isn't possible.
+	 */
+	private static class LineWriter {
+
+		private final float[][] results;
+
+		private final List<Cursor<FloatType>> cursors;
+
+		private LineWriter(List<RandomAccessibleInterval<FloatType>> outputs, int width) {
+			this.results = new float[outputs.size()][width];
+			this.cursors = outputs.stream().map(output -> Views.flatIterable(output).cursor())
+					.collect(Collectors.toList());
+		}
+
+		/**
+		 * Writes the features of the line, whose second derivatives start at
+		 * the given offset of the arrays, to the outputs.
+		 */
+		private void write(float[] dxx, float[] dxy, float[] dyy, int offset) {
+			int width = results[0].length;
+			for (int x = 0; x < width; x++)
+				calculateHessianPerPixel(results, x, dxx[offset + x], dxy[offset + x], dyy[offset + x]);
+			for (int i = 0; i < results.length; i++) {
+				float[] values = results[i];
+				Cursor<FloatType> cursor = cursors.get(i);
+				for (int x = 0; x < width; x++)
+					cursor.next().set(values[x]);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the eight Hessian features of one pixel from the second
+	 * derivatives, and stores them at the given index of the result arrays.
+	 */
+	private static void calculateHessianPerPixel(float[][] results, int index,
+			float s_xx, float s_xy, float s_yy)
 	{
-		final double t = Math.pow(1, 0.75);
+		// NB: The features are gamma-normalized with t = 1, which has no effect.
 
 		// Hessian module: sqrt (a^2 + b*c + d^2)
-		output.get(HESSIAN).set((float) Math.sqrt(s_xx*s_xx + s_xy*s_xy+ s_yy*s_yy));
+		results[HESSIAN][index] = (float) Math.sqrt(s_xx * s_xx + s_xy * s_xy + s_yy * s_yy);
 		// Trace: a + d
 		final float trace = s_xx + s_yy;
-		output.get(TRACE).set(trace);
+		results[TRACE][index] = trace;
 		// Determinant: a*d - c*b
-		final float determinant = s_xx*s_yy-s_xy*s_xy;
-		output.get(DETERMINANT).set(determinant);
+		results[DETERMINANT][index] = s_xx * s_yy - s_xy * s_xy;
 
-		// Ratio
-		//ipRatio.set((float)(trace*trace) / determinant);
+		final float difference = s_xx - s_yy;
+		final float squareDifference = 4 * s_xy * s_xy + difference * difference;
 		// First eigenvalue: (a + d) / 2 + sqrt( ( 4*b^2 + (a - d)^2) / 2 )
-		output.get(EIGENVALUE_1).set((float) ( trace/2.0 + Math.sqrt((4*s_xy*s_xy + (s_xx - s_yy)*(s_xx - s_yy)) / 2.0 ) ) );
+		final double root = Math.sqrt(squareDifference / 2.0);
+		results[EIGENVALUE_1][index] = (float) (trace / 2.0 + root);
 		// Second eigenvalue: (a + d) / 2 - sqrt( ( 4*b^2 + (a - d)^2) / 2 )
-		output.get(EIGENVALUE_2).set((float) ( trace/2.0 - Math.sqrt((4*s_xy*s_xy + (s_xx - s_yy)*(s_xx - s_yy)) / 2.0 ) ) );
-		// Orientation
-		if (s_xy < 0.0) // -0.5 * acos( (a-d) / sqrt( 4*b^2 + (a - d)^2)) )
-		{
-			float orientation =(float)( -0.5 * Math.acos((s_xx	- s_yy)
-					/ Math.sqrt(4.0 * s_xy * s_xy + (s_xx - s_yy) * (s_xx - s_yy)) ));
-			if (Float.isNaN(orientation))
-				orientation = 0;
-			output.get(ORIENTATION).set(orientation);
-		}
-		else 	// 0.5 * acos( (a-d) / sqrt( 4*b^2 + (a - d)^2)) )
-		{
-			float orientation =(float)( 0.5 * Math.acos((s_xx	- s_yy)
-					/ Math.sqrt(4.0 * s_xy * s_xy + (s_xx - s_yy) * (s_xx - s_yy)) ));
-			if (Float.isNaN(orientation))
-				orientation = 0;
-			output.get(ORIENTATION).set(orientation);
-		}
+		results[EIGENVALUE_2][index] = (float) (trace / 2.0 - root);
+		// Orientation: +-0.5 * acos( (a-d) / sqrt( 4*b^2 + (a - d)^2)) ), with the sign of b
+		final double factor = s_xy < 0.0 ? -0.5 : 0.5;
+		float orientation = (float) (factor * Math.acos(difference / Math.sqrt(4.0 * s_xy * s_xy + difference * difference)));
+		results[ORIENTATION][index] = Float.isNaN(orientation) ? 0 : orientation;
 		// Gamma-normalized square eigenvalue difference
-		output.get(SQUARE_EIGENVALUE_DIFFERENCE).set((float) ( Math.pow(t,4) * trace*trace * ( (s_xx - s_yy)*(s_xx - s_yy) + 4*s_xy*s_xy ) ) );
+		results[SQUARE_EIGENVALUE_DIFFERENCE][index] = (float) ((double) trace * trace * squareDifference);
 		// Square of Gamma-normalized eigenvalue difference
-		output.get(NORMALIZED_EIGENVALUE_DIFFERENCE).set((float) ( Math.pow(t,2) * ( (s_xx - s_yy)*(s_xx - s_yy) + 4*s_xy*s_xy ) ) );
+		results[NORMALIZED_EIGENVALUE_DIFFERENCE][index] = squareDifference;
 	}
 }
@@ -51,6 +51,16 @@ public class SingleLipschitzFeature extends AbstractFeatureOp {
 		apply(in, out.get(0));
 	}
 
+	@Override
+	public double cost() {
+		return 2 * Math.pow(3, globalSettings().numDimensions());
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return Intervals.expand(outputInterval, border);
+	}
+
 	@Override
 	public boolean checkGlobalSettings(GlobalSettings globals) {
 		return globals.numDimensions() == 2;
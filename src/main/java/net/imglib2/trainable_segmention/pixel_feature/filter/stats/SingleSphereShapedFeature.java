@@ -4,14 +4,17 @@ import net.imagej.ops.Op;
 import net.imagej.ops.Ops;
 import net.imagej.ops.special.computer.Computers;
 import net.imagej.ops.special.computer.UnaryComputerOp;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.neighborhood.HyperSphereShape;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureInput;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -61,7 +64,38 @@ public class SingleSphereShapedFeature extends AbstractFeatureOp {
 
 	@Override
 	public void apply(RandomAccessible<FloatType> in, List<RandomAccessibleInterval<FloatType>> out) {
-		applySingle(in, out.get(0));
+		apply(new FeatureInput(ops(), in, out.get(0)), out);
+	}
+
+	@Override
+	public void apply(FeatureInput in, List<RandomAccessibleInterval<FloatType>> out) {
+		if (operation.equals(MEDIAN))
+			SlidingMedian.calculate(in.original(), out.get(0), sphereRuns(), in.exactMedian());
+		else if (operation.equals(MIN) || operation.equals(MAX))
+			SphereMinMax.calculate(in.original(), out.get(0), sphereRuns(), operation.equals(MAX));
+		else
+			applySingle(in.original(), out.get(0));
+	}
+
+	@Override
+	public double cost() {
+		int n = globalSettings().numDimensions();
+		if (operation.equals(MEDIAN))
+			// two histogram updates per run of the sphere
+			return 2 * Math.pow(2 * radius + 1, n - 1);
+		if (operation.equals(MIN) || operation.equals(MAX))
+			// one comparison per run of the sphere
+			return Math.pow(2 * radius + 1, n - 1);
+		return Math.pow(2 * radius + 1, n);
+	}
+
+	private SphereRuns sphereRuns() {
+		return new SphereRuns((long) radius, globalSettings().numDimensions());
+	}
+
+	@Override
+	public Interval requiredInput(Interval outputInterval) {
+		return Intervals.expand(outputInterval, (long) radius);
 	}
 
 	@Override
@@ -0,0 +1,216 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.stats;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import java.util.Arrays;
+
+/**
+ * Median filter with a {@link net.imglib2.algorithm.neighborhood.HyperSphereShape}
+ * neighborhood, that slides a histogram along the X axis, as proposed by
+ * Huang et al. When the window moves by one pixel, only the first pixel of
+ * each run of the sphere is removed from the histogram, and the pixel after
+ * each run is added. The cost per pixel is proportional to the number of
+ * runs, instead of the number of pixels in the sphere.
+ * <p>
+ * The histogram counts levels: The distinct values of the input image are
+ * sorted and each pixel is replaced by the index of its value. Unless the
+ * exact median is requested, the values are first rounded towards zero to
+ * {@link #MANTISSA_BITS} bits of mantissa. This limits the number of levels
+ * of float images, the relative error is below 2^-15. Integers up to 65536
+ * are kept exactly. The rounding depends only on the value itself, so the
+ * median doesn't depend on the tile, or the other values of the image. The
+ * histogram is split into blocks of 64 levels, the median is found by
+ * moving a pointer over the block counts, starting from the median of the
+ * previous pixel.
+ * <p>
+ * Large images are calculated in blocks, see {@link SphereRuns#blocks}.
+ *
+ * @author Matthias Arzt
+ */
+class SlidingMedian {
+
+	static final int MANTISSA_BITS = 15;
+
+	private static final int ROUNDING_MASK = -1 << (23 - MANTISSA_BITS);
+
+	private static final int BLOCK_BITS = 6;
+
+	private SlidingMedian() {
+		// prevent from instantiation
+	}
+
+	static void calculate(RandomAccessible<FloatType> input, RandomAccessibleInterval<FloatType> output, SphereRuns runs, boolean exact) {
+		for (Interval block : runs.blocks(output, SphereRuns.MAX_BLOCK_VOXELS))
+			calculateBlock(input, Views.interval(output, block), runs, exact);
+	}
+
+	private static void calculateBlock(RandomAccessible<FloatType> input, RandomAccessibleInterval<FloatType> output,
+			SphereRuns runs, boolean exact)
+	{
+		int n = output.numDimensions();
+		int radius = (int) runs.radius();
+		Interval inputInterval = Intervals.expand(output, radius);
+		int[] strides = strides(Intervals.dimensionsAsLongArray(inputInterval));
+		float[] values = read(input, inputInterval);
+		int[] levels = new int[values.length];
+		float[] table = levels(values, exact, levels);
+		int numRuns = runs.size();
+		int[] runOffsets = new int[numRuns];
+		int[] halfWidths = new int[numRuns];
+		for (int i = 0; i < numRuns; i++) {
+			long[] offset = runs.offset(i);
+			for (int d = 1; d < n; d++)
+				runOffsets[i] += (int) offset[d] * strides[d];
+			halfWidths[i] = (int) runs.halfWidth(i);
+		}
+		int k = (int) (runs.numPixels() / 2);
+		Histogram histogram = new Histogram(table.length);
+		int width = (int) output.dimension(0);
+		float[] result = new float[(int) Intervals.numElements(output)];
+		int[] position = new int[n];
+		for (int start = 0; start < result.length; start += width) {
+			int center = radius;
+			for (int d = 1; d < n; d++)
+				center += (position[d] + radius) * strides[d];
+			for (int i = 0; i < numRuns; i++)
+				for (int p = center + runOffsets[i] - halfWidths[i]; p <= center + runOffsets[i] + halfWidths[i]; p++)
+					histogram.add(levels[p]);
+			for (int x = 0; ; x++) {
+				result[start + x] = table[histogram.select(k)];
+				if (x == width - 1)
+					break;
+				for (int i = 0; i < numRuns; i++) {
+					int p = center + runOffsets[i] + x;
+					histogram.remove(levels[p - halfWidths[i]]);
+					histogram.add(levels[p + halfWidths[i] + 1]);
+				}
+			}
+			// NB: Remove the last window, to get an empty histogram for the next line.
+			for (int i = 0; i < numRuns; i++) {
+				int p = center + runOffsets[i] + width - 1;
+				for (int q = p - halfWidths[i]; q <= p + halfWidths[i]; q++)
+					histogram.remove(levels[q]);
+			}
+			for (int d = 1; d < n && ++position[d] == output.dimension(d); d++)
+				position[d] = 0;
+		}
+		RandomAccessibleInterval<FloatType> source = Views.translate(
+				ArrayImgs.floats(result, Intervals.dimensionsAsLongArray(output)), Intervals.minAsLongArray(output));
+		LoopBuilder.setImages(source, output).forEachPixel((s, t) -> t.set(s));
+	}
+
+	/**
+	 * Fills the levels array with the level of each value, and returns the
+	 * value of each level.
+	 */
+	private static float[] levels(float[] values, boolean exact, int[] levels) {
+		if (!exact)
+			for (int i = 0; i < values.length; i++)
+				values[i] = round(values[i]);
+		float[] table = distinctSorted(values);
+		for (int i = 0; i < values.length; i++)
+			levels[i] = Arrays.binarySearch(table, values[i]);
+		return table;
+	}
+
+	/**
+	 * Rounds the value towards zero to {@link #MANTISSA_BITS} bits of
+	 * mantissa. The rounding is monotonic, therefore the median of the
+	 * rounded values is the rounded median.
+	 */
+	static float round(float value) {
+		if (Float.isNaN(value) || Float.isInfinite(value))
+			return value;
+		return Float.intBitsToFloat(Float.floatToRawIntBits(value) & ROUNDING_MASK);
+	}
+
+	private static float[] distinctSorted(float[] values) {
+		float[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int count = 0;
+		for (int i = 0; i < sorted.length; i++)
+			if (count == 0 || Float.compare(sorted[count - 1], sorted[i]) != 0)
+				sorted[count++] = sorted[i];
+		return Arrays.copyOf(sorted, count);
+	}
+
+	private static float[] read(RandomAccessible<FloatType> input, Interval interval) {
+		float[] values = new float[(int) Intervals.numElements(interval)];
+		Cursor<FloatType> cursor = Views.flatIterable(Views.interval(input, interval)).cursor();
+		for (int i = 0; i < values.length; i++)
+			values[i] = cursor.next().get();
+		return values;
+	}
+
+	private static int[] strides(long[] dimensions) {
+		int[] strides = new int[dimensions.length];
+		int stride = 1;
+		for (int d = 0; d < dimensions.length; d++) {
+			strides[d] = stride;
+			stride *= (int) dimensions[d];
+		}
+		return strides;
+	}
+
+	/**
+	 * Histogram of levels, with counts per level and per block of levels.
+	 */
+	private static class Histogram {
+
+		private final int[] counts;
+
+		private final int[] blockCounts;
+
+		/** Block that contained the last selected level. */
+		private int block = 0;
+
+		/** Number of values in the blocks below {@link #block}. */
+		private int below = 0;
+
+		private Histogram(int numLevels) {
+			counts = new int[numLevels];
+			blockCounts = new int[(numLevels >> BLOCK_BITS) + 1];
+		}
+
+		private void add(int level) {
+			counts[level]++;
+			blockCounts[level >> BLOCK_BITS]++;
+			if ((level >> BLOCK_BITS) < block)
+				below++;
+		}
+
+		private void remove(int level) {
+			counts[level]--;
+			blockCounts[level >> BLOCK_BITS]--;
+			if ((level >> BLOCK_BITS) < block)
+				below--;
+		}
+
+		/**
+		 * Returns the k-th smallest level, starting with zero.
+		 */
+		private int select(int k) {
+			while (below > k) {
+				block--;
+				below -= blockCounts[block];
+			}
+			while (below + blockCounts[block] <= k) {
+				below += blockCounts[block];
+				block++;
+			}
+			int count = below;
+			int level = block << BLOCK_BITS;
+			while ((count += counts[level]) <= k)
+				level++;
+			return level;
+		}
+	}
+}
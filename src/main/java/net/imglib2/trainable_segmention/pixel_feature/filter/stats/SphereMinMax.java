@@ -0,0 +1,142 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.stats;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+/**
+ * Minimum and maximum filter with a
+ * {@link net.imglib2.algorithm.neighborhood.HyperSphereShape} neighborhood.
+ * The sphere is decomposed into runs along the X axis, see
+ * {@link SphereRuns}. For each distinct run length, every line of the
+ * image is filtered with a one dimensional maximum filter, using the
+ * algorithm of van Herk and Gil-Werman, which needs three comparisons per
+ * pixel independent of the run length. The result of a pixel is the
+ * maximum of the filtered lines at the offsets of the runs. The cost per
+ * pixel is therefore proportional to the number of runs, instead of the
+ * number of pixels in the sphere.
+ * <p>
+ * The minimum is calculated as the negated maximum of the negated image.
+ * Large images are calculated in blocks, see {@link SphereRuns#blocks}.
+ *
+ * @author Matthias Arzt
+ */
+class SphereMinMax {
+
+	private SphereMinMax() {
+		// prevent from instantiation
+	}
+
+	static void calculate(RandomAccessible<FloatType> input, RandomAccessibleInterval<FloatType> output, SphereRuns runs, boolean max) {
+		for (Interval block : runs.blocks(output, SphereRuns.MAX_BLOCK_VOXELS))
+			calculateBlock(input, Views.interval(output, block), runs, max);
+	}
+
+	private static void calculateBlock(RandomAccessible<FloatType> input, RandomAccessibleInterval<FloatType> output,
+			SphereRuns runs, boolean max)
+	{
+		int n = output.numDimensions();
+		int radius = (int) runs.radius();
+		Interval inputInterval = Intervals.expand(output, radius);
+		float[] values = read(input, inputInterval, !max);
+		int inputWidth = (int) inputInterval.dimension(0);
+		int numLines = values.length / inputWidth;
+		// NB: strides in units of lines, the entry for dimension 0 isn't used
+		int[] lineStrides = new int[n];
+		for (int d = 1, stride = 1; d < n; stride *= (int) inputInterval.dimension(d), d++)
+			lineStrides[d] = stride;
+		int width = (int) output.dimension(0);
+		float[] result = new float[(int) Intervals.numElements(output)];
+		Arrays.fill(result, Float.NEGATIVE_INFINITY);
+		float[] filtered = new float[numLines * width];
+		float[] prefix = new float[inputWidth];
+		float[] suffix = new float[inputWidth];
+		TreeSet<Long> halfWidths = new TreeSet<>();
+		for (int i = 0; i < runs.size(); i++)
+			halfWidths.add(runs.halfWidth(i));
+		for (long halfWidth : halfWidths) {
+			filterLines(values, inputWidth, numLines, radius, (int) halfWidth, width, filtered, prefix, suffix);
+			int[] lineOffsets = runs(runs, halfWidth, lineStrides);
+			int[] position = new int[n];
+			for (int start = 0; start < result.length; start += width) {
+				int line = 0;
+				for (int d = 1; d < n; d++)
+					line += (position[d] + radius) * lineStrides[d];
+				for (int offset : lineOffsets) {
+					int source = (line + offset) * width;
+					for (int x = 0; x < width; x++)
+						result[start + x] = Math.max(result[start + x], filtered[source + x]);
+				}
+				for (int d = 1; d < n && ++position[d] == output.dimension(d); d++)
+					position[d] = 0;
+			}
+		}
+		if (!max)
+			for (int i = 0; i < result.length; i++)
+				result[i] = -result[i];
+		RandomAccessibleInterval<FloatType> source = Views.translate(
+				ArrayImgs.floats(result, Intervals.dimensionsAsLongArray(output)), Intervals.minAsLongArray(output));
+		LoopBuilder.setImages(source, output).forEachPixel((s, t) -> t.set(s));
+	}
+
+	/**
+	 * Returns the line offsets of the runs with the given half width.
+	 */
+	private static int[] runs(SphereRuns runs, long halfWidth, int[] lineStrides) {
+		return IntStream.range(0, runs.size())
+				.filter(i -> runs.halfWidth(i) == halfWidth)
+				.map(i -> {
+					long[] offset = runs.offset(i);
+					int lineOffset = 0;
+					for (int d = 1; d < lineStrides.length; d++)
+						lineOffset += (int) offset[d] * lineStrides[d];
+					return lineOffset;
+				}).toArray();
+	}
+
+	/**
+	 * Calculates the maximum of the window [x - halfWidth, x + halfWidth]
+	 * for each line of the input, and x from 0 to width - 1. The input lines
+	 * are longer by the border on both sides. The lines are split into blocks
+	 * of the window size. The maximum of a window is the maximum of the
+	 * suffix of the block that contains its first pixel, and the prefix of the
+	 * block that contains its last pixel.
+	 */
+	private static void filterLines(float[] values, int inputWidth, int numLines, int border, int halfWidth, int width,
+			float[] filtered, float[] prefix, float[] suffix)
+	{
+		int size = 2 * halfWidth + 1;
+		for (int line = 0; line < numLines; line++) {
+			int offset = line * inputWidth;
+			for (int i = 0; i < inputWidth; i++)
+				prefix[i] = (i % size == 0) ? values[offset + i] : Math.max(prefix[i - 1], values[offset + i]);
+			for (int i = inputWidth - 1; i >= 0; i--)
+				suffix[i] = (i % size == size - 1 || i == inputWidth - 1) ? values[offset + i] : Math.max(suffix[i + 1], values[offset + i]);
+			int target = line * width;
+			for (int x = 0; x < width; x++) {
+				int first = x + border - halfWidth;
+				filtered[target + x] = Math.max(suffix[first], prefix[first + size - 1]);
+			}
+		}
+	}
+
+	private static float[] read(RandomAccessible<FloatType> input, Interval interval, boolean negate) {
+		float[] values = new float[(int) Intervals.numElements(interval)];
+		Cursor<FloatType> cursor = Views.flatIterable(Views.interval(input, interval)).cursor();
+		for (int i = 0; i < values.length; i++) {
+			float value = cursor.next().get();
+			values[i] = negate ? -value : value;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,113 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.stats;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.util.Intervals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The pixels of a {@link HyperSphereShape} neighborhood, decomposed into
+ * runs along the X axis. Each run is given by its offset in the higher
+ * dimensions, and its half width: The run covers the offsets -halfWidth to
+ * +halfWidth along X.
+ * <p>
+ * The runs are calculated exactly as the cursor of {@link HyperSphereShape}
+ * does, which rounds the radius down in every dimension.
+ *
+ * @author Matthias Arzt
+ */
+class SphereRuns {
+
+	/**
+	 * Maximal number of input voxels of a block, see {@link #blocks}.
+	 */
+	static final long MAX_BLOCK_VOXELS = 1 << 26;
+
+	private final long radius;
+
+	private final List<long[]> offsets = new ArrayList<>();
+
+	private final List<Long> halfWidths = new ArrayList<>();
+
+	SphereRuns(long radius, int numDimensions) {
+		this.radius = radius;
+		addRuns(new long[numDimensions], numDimensions - 1, radius);
+	}
+
+	private void addRuns(long[] offset, int d, long r) {
+		if (d == 0) {
+			offsets.add(offset.clone());
+			halfWidths.add(r);
+			return;
+		}
+		for (long p = -r; p <= r; p++) {
+			offset[d] = p;
+			addRuns(offset, d - 1, (long) Math.sqrt(r * r - p * p));
+		}
+		offset[d] = 0;
+	}
+
+	long radius() {
+		return radius;
+	}
+
+	int size() {
+		return offsets.size();
+	}
+
+	/**
+	 * Offset of the run in dimensions 1 to n - 1, the entry for dimension 0
+	 * is zero.
+	 */
+	long[] offset(int run) {
+		return offsets.get(run);
+	}
+
+	long halfWidth(int run) {
+		return halfWidths.get(run);
+	}
+
+	/**
+	 * Splits the output interval along its last dimension into blocks. The
+	 * input of a block, the block expanded by the radius, has at most the
+	 * given number of voxels, or the number of voxels needed for a single
+	 * slice of the output. This keeps the arrays used by {@link SlidingMedian}
+	 * and {@link SphereMinMax} small and indexable by int.
+	 *
+	 * @throws IllegalArgumentException if the input of a single slice of the
+	 *                                  output is too large for an array.
+	 */
+	List<Interval> blocks(Interval output, long maxVoxels) {
+		int last = output.numDimensions() - 1;
+		long sliceSize = 1;
+		for (int d = 0; d < last; d++)
+			sliceSize *= output.dimension(d) + 2 * radius;
+		long minSlices = 2 * radius + 1;
+		if (sliceSize * minSlices > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Image is too large for a sphere of radius " + radius +
+					", the input of a single slice has more than " + Integer.MAX_VALUE + " voxels.");
+		long slicesPerBlock = Math.max(minSlices, maxVoxels / sliceSize) - 2 * radius;
+		long[] min = Intervals.minAsLongArray(output);
+		long[] max = Intervals.maxAsLongArray(output);
+		List<Interval> blocks = new ArrayList<>();
+		for (long position = output.min(last); position <= output.max(last); position += slicesPerBlock) {
+			min[last] = position;
+			max[last] = Math.min(output.max(last), position + slicesPerBlock - 1);
+			blocks.add(new FinalInterval(min, max));
+		}
+		return blocks;
+	}
+
+	/**
+	 * Number of pixels in the sphere.
+	 */
+	long numPixels() {
+		long sum = 0;
+		for (long halfWidth : halfWidths)
+			sum += 2 * halfWidth + 1;
+		return sum;
+	}
+}
@@ -0,0 +1,269 @@
+package net.imglib2.trainable_segmention.utils;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.ByteAccess;
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.FloatAccess;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.ShortAccess;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.NativeTypeFactory;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link OutputFactory} that creates images backed by memory mapped files in
+ * a scratch directory. The operating system's page cache decides which parts
+ * of the images are kept in memory, this allows images larger than the java
+ * heap.
+ * <p>
+ * A single memory mapping is limited to 2GB. Larger images are split along
+ * their last axis into hyperslices, which are mapped separately and stacked.
+ * <p>
+ * Each file is deleted right after it was mapped, the mapping stays valid
+ * until the image is garbage collected, and the operating system frees the
+ * disk space then. Where mapped files can't be deleted, like on Windows,
+ * the file is deleted when the JVM exits.
+ *
+ * @author Matthias Arzt
+ */
+public class MappedOutputFactory implements OutputFactory {
+
+	private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+
+	private final Path directory;
+
+	public MappedOutputFactory(Path directory) {
+		if (!Files.isDirectory(directory))
+			throw new IllegalArgumentException("Not a directory: " + directory);
+		this.directory = directory;
+	}
+
+	@Override
+	public <T extends NativeType<T>> Img<T> create(Interval interval, T type) {
+		Fraction entitiesPerPixel = type.getEntitiesPerPixel();
+		if (entitiesPerPixel.getDenominator() != 1)
+			throw new IllegalArgumentException("Unsupported pixel type: " + type.getClass().getSimpleName());
+		long bytesPerPixel = entitiesPerPixel.getNumerator() * bytesPerEntity(type);
+		long[] dimensions = Intervals.dimensionsAsLongArray(interval);
+		try {
+			Path file = Files.createTempFile(directory, "output", ".raw");
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				RandomAccessibleInterval<T> image = create(channel, 0, dimensions, type, bytesPerPixel);
+				return ImgView.wrap(Views.translate(image, Intervals.minAsLongArray(interval)), new ArrayImgFactory<>(type));
+			}
+			finally {
+				delete(file);
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void delete(Path file) {
+		try {
+			Files.delete(file);
+		}
+		catch (IOException e) {
+			file.toFile().deleteOnExit();
+		}
+	}
+
+	private <T extends NativeType<T>> RandomAccessibleInterval<T> create(FileChannel channel, long position,
+			long[] dimensions, T type, long bytesPerPixel) throws IOException
+	{
+		long bytes = Intervals.numElements(dimensions) * bytesPerPixel;
+		if (bytes <= MAX_MAPPED_BYTES)
+			return map(channel, position, dimensions, type, (int) bytes);
+		if (dimensions.length == 1)
+			throw new IllegalArgumentException("Image is too large for a memory mapped file.");
+		long[] sliceDimensions = Arrays.copyOf(dimensions, dimensions.length - 1);
+		long sliceBytes = Intervals.numElements(sliceDimensions) * bytesPerPixel;
+		List<RandomAccessibleInterval<T>> slices = new ArrayList<>();
+		for (long i = 0; i < dimensions[dimensions.length - 1]; i++)
+			slices.add(create(channel, position + i * sliceBytes, sliceDimensions, type, bytesPerPixel));
+		return Views.stack(slices);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends NativeType<T>> ArrayImg<T, ?> map(FileChannel channel, long position,
+			long[] dimensions, T type, int bytes) throws IOException
+	{
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes).order(ByteOrder.nativeOrder());
+		NativeTypeFactory<T, Object> factory = (NativeTypeFactory<T, Object>) type.getNativeTypeFactory();
+		ArrayImg<T, Object> img = new ArrayImg<>(access(factory, buffer), dimensions, type.getEntitiesPerPixel());
+		img.setLinkedType(factory.createLinkedType(img));
+		return img;
+	}
+
+	private static int bytesPerEntity(NativeType<?> type) {
+		switch (type.getNativeTypeFactory().getPrimitiveType()) {
+			case BYTE:
+				return 1;
+			case SHORT:
+				return 2;
+			case INT:
+			case FLOAT:
+				return 4;
+			case LONG:
+			case DOUBLE:
+				return 8;
+			default:
+				throw new IllegalArgumentException("Unsupported pixel type: " + type.getClass().getSimpleName());
+		}
+	}
+
+	private static Object access(NativeTypeFactory<?, ?> factory, ByteBuffer buffer) {
+		switch (factory.getPrimitiveType()) {
+			case BYTE:
+				return new MappedByteAccess(buffer);
+			case SHORT:
+				return new MappedShortAccess(buffer);
+			case INT:
+				return new MappedIntAccess(buffer);
+			case LONG:
+				return new MappedLongAccess(buffer);
+			case FLOAT:
+				return new MappedFloatAccess(buffer);
+			case DOUBLE:
+				return new MappedDoubleAccess(buffer);
+			default:
+				throw new IllegalArgumentException("Unsupported primitive type: " + factory.getPrimitiveType());
+		}
+	}
+
+	// -- Helper classes --
+
+	private static class MappedByteAccess implements ByteAccess {
+
+		private final ByteBuffer buffer;
+
+		private MappedByteAccess(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public byte getValue(int index) {
+			return buffer.get(index);
+		}
+
+		@Override
+		public void setValue(int index, byte value) {
+			buffer.put(index, value);
+		}
+	}
+
+	private static class MappedShortAccess implements ShortAccess {
+
+		private final ByteBuffer buffer;
+
+		private MappedShortAccess(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public short getValue(int index) {
+			return buffer.getShort(index << 1);
+		}
+
+		@Override
+		public void setValue(int index, short value) {
+			buffer.putShort(index << 1, value);
+		}
+	}
+
+	private static class MappedIntAccess implements IntAccess {
+
+		private final ByteBuffer buffer;
+
+		private MappedIntAccess(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int getValue(int index) {
+			return buffer.getInt(index << 2);
+		}
+
+		@Override
+		public void setValue(int index, int value) {
+			buffer.putInt(index << 2, value);
+		}
+	}
+
+	private static class MappedLongAccess implements LongAccess {
+
+		private final ByteBuffer buffer;
+
+		private MappedLongAccess(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public long getValue(int index) {
+			return buffer.getLong(index << 3);
+		}
+
+		@Override
+		public void setValue(int index, long value) {
+			buffer.putLong(index << 3, value);
+		}
+	}
+
+	private static class MappedFloatAccess implements FloatAccess {
+
+		private final ByteBuffer buffer;
+
+		private MappedFloatAccess(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public float getValue(int index) {
+			return buffer.getFloat(index << 2);
+		}
+
+		@Override
+		public void setValue(int index, float value) {
+			buffer.putFloat(index << 2, value);
+		}
+	}
+
+	private static class MappedDoubleAccess implements DoubleAccess {
+
+		private final ByteBuffer buffer;
+
+		private MappedDoubleAccess(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public double getValue(int index) {
+			return buffer.getDouble(index << 3);
+		}
+
+		@Override
+		public void setValue(int index, double value) {
+			buffer.putDouble(index << 3, value);
+		}
+	}
+}
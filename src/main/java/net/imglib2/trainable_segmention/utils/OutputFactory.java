@@ -0,0 +1,35 @@
+package net.imglib2.trainable_segmention.utils;
+
+import net.imagej.ops.OpEnvironment;
+import net.imglib2.Interval;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+
+/**
+ * Creates the images, that are returned by
+ * {@link net.imglib2.trainable_segmention.pixel_feature.calculator.FeatureCalculator}
+ * and {@link net.imglib2.trainable_segmention.classification.Segmenter}.
+ *
+ * @author Matthias Arzt
+ * @see MappedOutputFactory
+ */
+public interface OutputFactory {
+
+	/**
+	 * Creates an image, that covers the given interval.
+	 */
+	<T extends NativeType<T>> Img<T> create(Interval interval, T type);
+
+	/**
+	 * Returns an {@link OutputFactory} that creates images on the java heap.
+	 */
+	static OutputFactory onHeap(OpEnvironment ops) {
+		return new OutputFactory() {
+
+			@Override
+			public <T extends NativeType<T>> Img<T> create(Interval interval, T type) {
+				return ops.create().img(interval, type);
+			}
+		};
+	}
+}
@@ -2,6 +2,7 @@ package net.imglib2.trainable_segmention.classification;
 
 import com.google.gson.JsonElement;
 import net.imagej.ops.OpEnvironment;
+import net.imagej.ops.Ops;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.display.imagej.ImageJFunctions;
@@ -77,6 +78,17 @@ public class SegmenterTest {
 		Utils.<IntegerType>assertImagesEqual(result, result2);
 	}
 
+	@Test
+	public void testOnlyUsedFeaturesAreCalculated() {
+		FeatureSettings featureSettings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian(), GroupedFeatures.differenceOfGaussians());
+		Segmenter segmenter = Trainer.train(ops, img, labeling, featureSettings);
+		RandomAccessibleInterval<FloatType> allFeatures = segmenter.features().apply(img);
+		Img<UnsignedByteType> expected = ops.create().img(img, new UnsignedByteType());
+		ops.run(Ops.Map.class, expected, Views.collapseReal(allFeatures), segmenter.pixelClassificationOp());
+		Utils.assertImagesEqual(expected, segmenter.segment(img));
+	}
+
 	@Test
 	public void testDifferentWekaClassifiers() {
 		FeatureSettings featureSettings = new FeatureSettings(GlobalSettings.default2dSettings(), Arrays.asList(SingleFeatures.identity(), GroupedFeatures.gauss()));
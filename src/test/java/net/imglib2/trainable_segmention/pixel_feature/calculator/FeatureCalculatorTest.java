@@ -1,19 +1,29 @@
 package net.imglib2.trainable_segmention.pixel_feature.calculator;
 
 import net.imagej.ops.OpService;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.display.imagej.ImageJFunctions;
 import net.imglib2.loops.LoopBuilder;
 import net.imglib2.trainable_segmention.Utils;
 import net.imglib2.trainable_segmention.pixel_feature.filter.AbstractFeatureOp;
 import net.imglib2.trainable_segmention.pixel_feature.filter.FeatureOp;
+import net.imglib2.trainable_segmention.pixel_feature.filter.FeaturePlan;
+import net.imglib2.trainable_segmention.pixel_feature.filter.GroupedFeatures;
+import net.imglib2.trainable_segmention.pixel_feature.filter.Intermediate;
+import net.imglib2.trainable_segmention.pixel_feature.filter.SingleFeatures;
+import net.imglib2.trainable_segmention.pixel_feature.filter.stats.SingleSphereShapedFeature;
 import net.imglib2.trainable_segmention.pixel_feature.settings.ChannelSetting;
 import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSetting;
 import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSettings;
 import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.IntervalView;
 import net.imglib2.view.Views;
 import org.junit.Test;
@@ -22,9 +32,13 @@ import org.scijava.plugin.Parameter;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class FeatureCalculatorTest {
 
@@ -56,6 +70,209 @@ public class FeatureCalculatorTest {
 		Utils.assertImagesEqual(ArrayImgs.floats(new float[]{44, 45, 14, 15}, 1, 1, 4), out);
 	}
 
+	@Test
+	public void testParallel() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian(), GroupedFeatures.differenceOfGaussians());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setNumThreads(4);
+		Utils.assertImagesEqual(expected, calculator.apply(input));
+	}
+
+	@Test
+	public void testParallelHessian3D() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default3dSettings(),
+				SingleFeatures.hessian3d(2.0, true), SingleFeatures.hessian3d(2.0, false));
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = sinusImage3d();
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setNumThreads(4);
+		Utils.assertImagesEqual(expected, calculator.apply(input));
+	}
+
+	@Test(timeout = 60000)
+	public void testSmallFixedThreadPool() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default3dSettings(),
+				SingleFeatures.hessian3d(1.0, true), SingleFeatures.hessian3d(2.0, true),
+				SingleFeatures.hessian3d(4.0, true), SingleFeatures.hessian3d(8.0, true));
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = sinusImage3d();
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			calculator.setExecutor(executor);
+			calculator.setNumThreads(4);
+			Utils.assertImagesEqual(expected, calculator.apply(input));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private static Img< FloatType > sinusImage3d() {
+		Img< FloatType > input = ArrayImgs.floats(30, 25, 20);
+		Cursor< FloatType > cursor = input.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().setReal(Math.sin(0.3 * cursor.getIntPosition(0)) * Math.cos(0.2 * cursor.getIntPosition(1) + 0.5 * cursor.getIntPosition(2)));
+		}
+		return input;
+	}
+
+	@Test
+	public void testParallelChannels() {
+		GlobalSettings globalSettings = new GlobalSettings(ChannelSetting.multiple(3),
+				2, Collections.singletonList(1.0), 1);
+		FeatureSettings settings = new FeatureSettings(globalSettings, add_42, add_12);
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		calculator.setNumThreads(3);
+		Img< FloatType > input = ArrayImgs.floats(new float[] { 2, 3, 4 }, 1, 1, 3);
+		RandomAccessibleInterval< FloatType > out = calculator.apply(input);
+		Utils.assertImagesEqual(ArrayImgs.floats(new float[]{44, 45, 46, 14, 15, 16}, 1, 1, 6), out);
+	}
+
+	@Test
+	public void testTiled() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian(), GroupedFeatures.gradient(),
+				GroupedFeatures.differenceOfGaussians());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setTileSize(37, 50);
+		Utils.assertImagesEqual(expected, calculator.apply(input));
+	}
+
+	@Test
+	public void testTiledWithLargeHalo() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.mean(), GroupedFeatures.max(), GroupedFeatures.gabor());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setTileSize(64, 64);
+		Utils.assertImagesEqual(60, expected, calculator.apply(input));
+	}
+
+	@Test
+	public void testLazy() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		RandomAccessibleInterval< FloatType > lazy = calculator.applyLazy(Views.extendBorder(input), input, new int[] { 32, 32 }, 4);
+		Utils.assertImagesEqual(expected, lazy);
+	}
+
+	@Test
+	public void testInterleaved() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setInterleaved(true);
+		Utils.assertImagesEqual(expected, calculator.apply(input));
+	}
+
+	@Test
+	public void testUpdate() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian(), GroupedFeatures.max());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > features = calculator.apply(input);
+		Interval dirty = new FinalInterval(new long[] { 20, 30 }, new long[] { 29, 39 });
+		Views.interval(input, dirty).forEach(pixel -> pixel.set(255));
+		Interval updated = calculator.update(Views.extendBorder(input), features, dirty);
+		Utils.assertImagesEqual(calculator.apply(input), features);
+		assertTrue(Intervals.equals(updated, Intervals.union(updated, dirty)));
+		assertTrue(Intervals.equals(input, Intervals.union(input, updated)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUpdateHalfFloat() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(), GroupedFeatures.gauss());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		calculator.setStorage(FeatureStorage.HALF_FLOAT);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > features = calculator.apply(input);
+		calculator.update(Views.extendBorder(input), features, new FinalInterval(new long[] { 20, 30 }, new long[] { 29, 39 }));
+	}
+
+	@Test
+	public void testRequiredInput() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				SingleFeatures.sphereOperation(3, SingleSphereShapedFeature.MIN),
+				SingleFeatures.sphereOperation(5, SingleSphereShapedFeature.MAX));
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Interval output = new FinalInterval(new long[] { 10, 20 }, new long[] { 30, 40 });
+		Interval expected = new FinalInterval(new long[] { 5, 15 }, new long[] { 35, 45 });
+		assertTrue(Intervals.equals(expected, calculator.requiredInput(output)));
+	}
+
+	@Test
+	public void testPlan() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				SingleFeatures.gauss(2.0), SingleFeatures.hessian(2.0), SingleFeatures.sobelGradient(2.0));
+		FeaturePlan plan = new FeatureCalculator(ops, settings).plan();
+		assertEquals(new HashSet<>(Arrays.asList(Intermediate.gauss(0.8), Intermediate.sobelX(0.8),
+				Intermediate.sobelY(0.8))), plan.intermediates());
+		assertEquals(3, plan.users(Intermediate.gauss(0.8)).size());
+		assertEquals(7, plan.requestedIntermediates());
+		assertEquals(4, plan.savedCalculations());
+	}
+
+	@Test
+	public void testPyramid() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.differenceOfGaussians());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setPyramidTolerance(0.01);
+		RandomAccessibleInterval< FloatType > pyramid = calculator.apply(input);
+		Utils.assertImagesEqual(40, expected, pyramid);
+		calculator.setTileSize(37, 50);
+		Utils.assertImagesEqual(pyramid, calculator.apply(input));
+	}
+
+	@Test
+	public void testRecursiveGauss() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setRecursiveGaussThreshold(2.0);
+		Utils.assertImagesEqual(30, expected, calculator.apply(input));
+	}
+
+	@Test
+	public void testFusedDerivatives() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.hessian());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setFusedDerivatives(true);
+		Utils.assertImagesEqual(60, expected, calculator.apply(input));
+	}
+
+	@Test
+	public void testSteerableGabor() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gabor());
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		Img< FloatType > input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval< FloatType > expected = calculator.apply(input);
+		calculator.setSteerableGaborTolerance(0.1);
+		Utils.assertImagesEqual(35, expected, calculator.apply(input));
+	}
+
 	public static class AddValue extends AbstractFeatureOp implements FeatureOp {
 
 		@Parameter
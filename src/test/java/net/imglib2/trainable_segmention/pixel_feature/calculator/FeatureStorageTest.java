@@ -0,0 +1,109 @@
+package net.imglib2.trainable_segmention.pixel_feature.calculator;
+
+import net.imagej.ops.OpEnvironment;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.trainable_segmention.Utils;
+import net.imglib2.trainable_segmention.pixel_feature.filter.GroupedFeatures;
+import net.imglib2.trainable_segmention.pixel_feature.filter.SingleFeatures;
+import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSettings;
+import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
+import net.imglib2.type.numeric.real.FloatType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link FeatureStorage} and {@link HalfFloat}.
+ * <p>
+ * The accuracy of the quantized feature stacks on nuclei.tif, in PSNR
+ * relative to float storage, is required to be at least: unsigned short
+ * 80dB, unsigned byte 35dB. Half float values must be correctly rounded,
+ * and saturated where the Hessian features exceed its range.
+ *
+ * @author Matthias Arzt
+ */
+public class FeatureStorageTest {
+
+	private final OpEnvironment ops = Utils.ops();
+
+	private final Img<FloatType> image = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+
+	private final FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+			SingleFeatures.identity(), GroupedFeatures.gauss(), GroupedFeatures.hessian(),
+			GroupedFeatures.differenceOfGaussians());
+
+	@Test
+	public void testHalfFloat() {
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		RandomAccessibleInterval<FloatType> expected = calculator.apply(image);
+		calculator.setStorage(FeatureStorage.HALF_FLOAT);
+		assertHalfFloatEquals(expected, calculator.apply(image));
+	}
+
+	@Test
+	public void testHalfFloatTiled() {
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		RandomAccessibleInterval<FloatType> expected = calculator.apply(image);
+		calculator.setStorage(FeatureStorage.HALF_FLOAT);
+		RandomAccessibleInterval<FloatType> untiled = calculator.apply(image);
+		calculator.setTileSize(50, 50);
+		RandomAccessibleInterval<FloatType> tiled = calculator.apply(image);
+		Utils.assertImagesEqual(untiled, tiled);
+		assertHalfFloatEquals(expected, tiled);
+	}
+
+	@Test
+	public void testUnsignedShort() {
+		testStorage(settings, FeatureStorage.UNSIGNED_SHORT, 80);
+	}
+
+	@Test
+	public void testUnsignedByte() {
+		testStorage(settings, FeatureStorage.UNSIGNED_BYTE, 35);
+	}
+
+	@Test
+	public void testHalfFloatConversion() {
+		float[] exact = { 0, 1, -1, 0.5f, 2048, 65504, -65504, 0x1p-24f, 0x1p-14f, Float.POSITIVE_INFINITY };
+		for (float value : exact)
+			assertEquals(value, HalfFloat.toFloat(HalfFloat.fromFloat(value)), 0);
+		assertEquals(Float.POSITIVE_INFINITY, HalfFloat.toFloat(HalfFloat.fromFloat(70000)), 0);
+		assertEquals(2048, HalfFloat.toFloat(HalfFloat.fromFloat(2049)), 0); // ties to even
+		assertEquals(2052, HalfFloat.toFloat(HalfFloat.fromFloat(2051)), 0); // ties to even
+		assertEquals(Math.PI, HalfFloat.toFloat(HalfFloat.fromFloat((float) Math.PI)), 0.002);
+		assertEquals(true, Float.isNaN(HalfFloat.toFloat(HalfFloat.fromFloat(Float.NaN))));
+	}
+
+	@Test
+	public void testHalfFloatSaturation() {
+		assertEquals(65504, HalfFloat.toFloat(HalfFloat.fromFloatSaturated(70000)), 0);
+		assertEquals(-65504, HalfFloat.toFloat(HalfFloat.fromFloatSaturated(-1e20f)), 0);
+		assertEquals(65504, HalfFloat.toFloat(HalfFloat.fromFloatSaturated(65519)), 0);
+		assertEquals(1000, HalfFloat.toFloat(HalfFloat.fromFloatSaturated(1000)), 0);
+		assertEquals(Float.NEGATIVE_INFINITY, HalfFloat.toFloat(HalfFloat.fromFloatSaturated(Float.NEGATIVE_INFINITY)), 0);
+	}
+
+	/**
+	 * Asserts that each value is the expected value, saturated to the half
+	 * float range and rounded to half precision.
+	 */
+	private static void assertHalfFloatEquals(RandomAccessibleInterval<FloatType> expected,
+			RandomAccessibleInterval<FloatType> actual)
+	{
+		LoopBuilder.setImages(expected, actual).forEachPixel((e, a) -> {
+			float saturated = Math.max(-HalfFloat.MAX_VALUE, Math.min(HalfFloat.MAX_VALUE, e.get()));
+			assertEquals(saturated, a.get(), Math.abs(saturated) * 0x1p-11f + 0x1p-25f);
+		});
+	}
+
+	private void testStorage(FeatureSettings settings, FeatureStorage storage, double minPsnr) {
+		FeatureCalculator calculator = new FeatureCalculator(ops, settings);
+		RandomAccessibleInterval<FloatType> expected = calculator.apply(image);
+		calculator.setStorage(storage);
+		RandomAccessibleInterval<FloatType> actual = calculator.apply(image);
+		Utils.assertImagesEqual(minPsnr, expected, actual);
+	}
+}
@@ -0,0 +1,131 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.img.Img;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.trainable_segmention.RevampUtils;
+import net.imglib2.trainable_segmention.Utils;
+import net.imglib2.trainable_segmention.pixel_feature.calculator.FeatureCalculator;
+import net.imglib2.trainable_segmention.pixel_feature.filter.fft.InputFFT;
+import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSettings;
+import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link FeatureInput}
+ *
+ * @author Matthias Arzt
+ */
+public class FeatureInputTest {
+
+	private final Img<FloatType> image = ImageJFunctions.convertFloat(Utils.loadImage("bridge.png"));
+
+	private final RandomAccessible<FloatType> extended = Views.extendBorder(image);
+
+	private final Interval interval = new FinalInterval(new long[]{50, 50}, new long[]{100, 100});
+
+	@Test
+	public void testGauss() {
+		FeatureInput input = new FeatureInput(Utils.ops(), extended, interval);
+		Interval expanded = Intervals.expand(interval, 1);
+		RandomAccessibleInterval<FloatType> expected = Utils.ops().create().img(expanded, new FloatType());
+		RevampUtils.wrapException(() -> Gauss3.gauss(2.0, extended, expected));
+		Utils.assertImagesEqual(expected, input.gauss(2.0, expanded));
+	}
+
+	@Test
+	public void testGaussIsCached() {
+		FeatureInput input = new FeatureInput(Utils.ops(), extended, interval);
+		RandomAccessibleInterval<FloatType> a = input.gauss(2.0, interval);
+		RandomAccessibleInterval<FloatType> b = input.gauss(2.0, Intervals.expand(interval, 2));
+		assertSame(unwrap(a), unwrap(b));
+	}
+
+	@Test
+	public void testGaussOutsideOfCache() {
+		FeatureInput input = new FeatureInput(Utils.ops(), extended, interval);
+		Interval large = Intervals.expand(interval, 10);
+		RandomAccessibleInterval<FloatType> expected = Utils.ops().create().img(large, new FloatType());
+		RevampUtils.wrapException(() -> Gauss3.gauss(2.0, extended, expected));
+		Utils.assertImagesEqual(expected, input.gauss(2.0, large));
+	}
+
+	@Test
+	public void testSobel() {
+		FeatureInput input = new FeatureInput(Utils.ops(), extended, interval);
+		RandomAccessibleInterval<FloatType> blurred = input.gauss(2.0, Intervals.expand(interval, 1));
+		Utils.assertImagesEqual(RevampUtils.deriveX(Utils.ops(), blurred, interval), input.sobelX(2.0, interval));
+		Utils.assertImagesEqual(RevampUtils.deriveY(Utils.ops(), blurred, interval), input.sobelY(2.0, interval));
+	}
+
+	@Test
+	public void testFFTIsShared() {
+		FeatureInput input = new FeatureInput(Utils.ops(), extended, interval);
+		List<Intermediate> intermediates = Arrays.asList(Intermediate.fft(3), Intermediate.fft(12));
+		input.retain(intermediates);
+		InputFFT small = input.fft(3);
+		assertEquals(12, small.border());
+		assertSame(small, input.fft(12));
+		input.release(intermediates);
+		assertTrue(input.cachedIntermediates().isEmpty());
+	}
+
+	@Test
+	public void testFFTIsSharedAfterRelease() {
+		FeatureInput input = new FeatureInput(Utils.ops(), extended, interval);
+		List<Intermediate> large = Collections.singletonList(Intermediate.fft(12));
+		List<Intermediate> small = Collections.singletonList(Intermediate.fft(3));
+		input.retain(large);
+		input.retain(small);
+		InputFFT a = input.fft(12);
+		input.release(large);
+		assertSame(a, input.fft(3));
+		input.release(small);
+		assertTrue(input.cachedIntermediates().isEmpty());
+	}
+
+	@Test
+	public void testFFTBorderIsFixedWhenRetained() {
+		FeatureInput input = new FeatureInput(Utils.ops(), extended, interval);
+		List<Intermediate> large = Collections.singletonList(Intermediate.fft(12));
+		List<Intermediate> small = Collections.singletonList(Intermediate.fft(3));
+		input.retain(large);
+		input.retain(small);
+		input.release(large);
+		assertEquals(12, input.fft(3).border());
+		input.release(small);
+		assertTrue(input.cachedIntermediates().isEmpty());
+	}
+
+	@Test
+	public void testIntermediatesAreReleased() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian(), GroupedFeatures.sobelGradient(), GroupedFeatures.gabor());
+		FeatureCalculator calculator = new FeatureCalculator(Utils.ops(), settings);
+		FeatureJoiner joiner = new FeatureJoiner(calculator.features());
+		Img<FloatType> output = Utils.ops().create().img(RevampUtils.appendDimensionToInterval(interval, 0, joiner.count() - 1), new FloatType());
+		FeatureInput input = new FeatureInput(Utils.ops(), extended, interval);
+		joiner.apply(input, RevampUtils.slices(output));
+		assertTrue(input.cachedIntermediates().isEmpty());
+	}
+
+	private static Object unwrap(RandomAccessibleInterval<FloatType> image) {
+		return ((IntervalView<FloatType>) image).getSource();
+	}
+}
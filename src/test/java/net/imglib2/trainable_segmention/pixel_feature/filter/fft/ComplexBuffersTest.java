@@ -0,0 +1,56 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.fft;
+
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests {@link ComplexBuffers}.
+ *
+ * @author Matthias Arzt
+ */
+public class ComplexBuffersTest {
+
+	private final long defaultMaxBytes = ComplexBuffers.maxBytes();
+
+	@After
+	public void after() {
+		ComplexBuffers.setMaxBytes(defaultMaxBytes);
+		ComplexBuffers.clear();
+	}
+
+	@Test
+	public void testReuse() {
+		ComplexBuffers.clear();
+		Img<ComplexFloatType> buffer = ComplexBuffers.take(new long[] { 10, 10 });
+		ComplexBuffers.release(buffer);
+		assertSame(buffer, ComplexBuffers.take(new long[] { 10, 10 }));
+	}
+
+	@Test
+	public void testEviction() {
+		ComplexBuffers.clear();
+		Img<ComplexFloatType> a = ComplexBuffers.take(new long[] { 10, 10 });
+		Img<ComplexFloatType> b = ComplexBuffers.take(new long[] { 10, 20 });
+		ComplexBuffers.setMaxBytes(ComplexBuffers.bytes(b));
+		ComplexBuffers.release(a);
+		ComplexBuffers.release(b);
+		assertEquals(ComplexBuffers.bytes(b), ComplexBuffers.freeBytes());
+		assertNotSame(a, ComplexBuffers.take(new long[] { 10, 10 }));
+		assertSame(b, ComplexBuffers.take(new long[] { 10, 20 }));
+		assertEquals(0, ComplexBuffers.freeBytes());
+	}
+
+	@Test
+	public void testTooLarge() {
+		ComplexBuffers.clear();
+		ComplexBuffers.setMaxBytes(100);
+		ComplexBuffers.release(ComplexBuffers.take(new long[] { 10, 10 }));
+		assertEquals(0, ComplexBuffers.freeBytes());
+	}
+}
@@ -0,0 +1,81 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.fft;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.trainable_segmention.Utils;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link Convolution} and {@link SpatialInput}.
+ *
+ * @author Matthias Arzt
+ */
+public class ConvolutionTest {
+
+	private final Img<FloatType> image = ImageJFunctions.convertFloat(Utils.loadImage("bridge.png"));
+
+	private final RandomAccessible<FloatType> extended = Views.extendBorder(image);
+
+	private final Interval interval = new FinalInterval(new long[] { 50, 40 }, new long[] { 120, 100 });
+
+	private final RandomAccessibleInterval<FloatType> kernel = Views.translate(
+			ArrayImgs.floats(new float[] { 0, 1, 0, 2, 5, -1, 0, 3, 1 }, 3, 3), -1, -1);
+
+	@Test
+	public void testDirectEqualsFFT() {
+		RandomAccessibleInterval<FloatType> expected = create();
+		new InputFFT(extended, interval, 1, null).convolve(kernel, expected);
+		RandomAccessibleInterval<FloatType> result = create();
+		new SpatialInput(extended, interval, 4).convolve(kernel, result);
+		Utils.assertImagesEqual(60, expected, result);
+	}
+
+	@Test
+	public void testSeparable() {
+		float[][] kernels = { { 1, 2, 1 }, { 1, 0, -1 } };
+		RandomAccessibleInterval<FloatType> dense = Views.translate(
+				ArrayImgs.floats(new float[] { 1, 2, 1, 0, 0, 0, -1, -2, -1 }, 3, 3), -1, -1);
+		SpatialInput input = new SpatialInput(extended, interval, 2);
+		RandomAccessibleInterval<FloatType> expected = create();
+		input.convolve(dense, expected);
+		RandomAccessibleInterval<FloatType> result = create();
+		input.convolveSeparable(kernels, result);
+		Utils.assertImagesEqual(expected, result);
+	}
+
+	@Test
+	public void testConvolve() {
+		RandomAccessibleInterval<FloatType> expected = create();
+		new SpatialInput(extended, interval, 1).convolve(kernel, expected);
+		RandomAccessibleInterval<FloatType> result = create();
+		Convolution.convolve(extended, kernel, result, null);
+		Utils.assertImagesEqual(expected, result);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKernelTooLarge() {
+		new SpatialInput(extended, interval, 0).convolve(kernel, create());
+	}
+
+	@Test
+	public void testStrategy() {
+		Interval tile = new FinalInterval(256, 256);
+		assertEquals(Convolution.Strategy.SEPARABLE, Convolution.strategy(new long[] { 3, 3 }, true, tile, 1));
+		assertEquals(Convolution.Strategy.DIRECT, Convolution.strategy(new long[] { 7, 7 }, false, tile, 10));
+		assertEquals(Convolution.Strategy.FFT, Convolution.strategy(new long[] { 25, 25 }, false, tile, 10));
+		assertEquals(Convolution.Strategy.FFT, Convolution.strategy(new long[] { 61, 61 }, false, tile, 1));
+	}
+
+	private RandomAccessibleInterval<FloatType> create() {
+		return Utils.ops().create().img(interval, new FloatType());
+	}
+}
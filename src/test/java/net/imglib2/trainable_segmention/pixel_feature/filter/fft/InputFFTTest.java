@@ -0,0 +1,65 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.fft;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.fft2.FFTConvolution;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.trainable_segmention.Utils;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+/**
+ * Tests {@link InputFFT}.
+ *
+ * @author Matthias Arzt
+ */
+public class InputFFTTest {
+
+	private final Img<FloatType> image = ImageJFunctions.convertFloat(Utils.loadImage("bridge.png"));
+
+	private final RandomAccessible<FloatType> extended = Views.extendBorder(image);
+
+	private final Interval interval = new FinalInterval(new long[] { 50, 40 }, new long[] { 120, 100 });
+
+	private final RandomAccessibleInterval<FloatType> kernel = Views.translate(
+			ArrayImgs.floats(new float[] { 0, 1, 0, 2, 5, -1, 0, 3, 1 }, 3, 3), -1, -1);
+
+	@Test
+	public void testConvolve() {
+		InputFFT fft = new InputFFT(extended, interval, 1, null);
+		Utils.assertImagesEqual(expected(), convolve(fft));
+	}
+
+	@Test
+	public void testLargerBorder() {
+		InputFFT fft = new InputFFT(extended, interval, 12, null);
+		Utils.assertImagesEqual(60, expected(), convolve(fft));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKernelTooLarge() {
+		InputFFT fft = new InputFFT(extended, interval, 0, null);
+		fft.kernelFFT(kernel);
+	}
+
+	private RandomAccessibleInterval<FloatType> convolve(InputFFT fft) {
+		RandomAccessibleInterval<FloatType> result = Utils.ops().create().img(interval, new FloatType());
+		fft.convolve(kernel, result);
+		return result;
+	}
+
+	private RandomAccessibleInterval<FloatType> expected() {
+		RandomAccessibleInterval<FloatType> expected = Utils.ops().create().img(interval, new FloatType());
+		FFTConvolution<FloatType> convolution = new FFTConvolution<>(extended, interval, kernel, kernel, new ArrayImgFactory<>());
+		convolution.setKernel(kernel);
+		convolution.setOutput(expected);
+		convolution.convolve();
+		return expected;
+	}
+}
@@ -0,0 +1,77 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.gabor;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.trainable_segmention.pixel_feature.filter.fft.InputFFT;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link GaborKernelCache}.
+ *
+ * @author Matthias Arzt
+ */
+public class GaborKernelCacheTest {
+
+	private final List<Object> parameters = Arrays.asList(1.0, 0.5, 0.0, 2.0, 10);
+
+	private final List<Img<FloatType>> kernels = Collections.singletonList(ArrayImgs.floats(new float[] { 1 }, 1, 1));
+
+	@Test
+	public void testKernels() {
+		GaborKernelCache.clear();
+		List<Img<FloatType>> a = GaborKernelCache.kernels(parameters, () -> kernels);
+		List<Img<FloatType>> b = GaborKernelCache.kernels(Arrays.asList(1.0, 0.5, 0.0, 2.0, 10), () -> {
+			throw new AssertionError("Kernels should be cached.");
+		});
+		assertSame(a, b);
+	}
+
+	@Test
+	public void testKernelFFTs() {
+		GaborKernelCache.clear();
+		List<Img<ComplexFloatType>> a = GaborKernelCache.kernelFFTs(parameters, kernels, inputFFT(20));
+		assertSame(a, GaborKernelCache.kernelFFTs(parameters, kernels, inputFFT(20)));
+		assertNotSame(a, GaborKernelCache.kernelFFTs(parameters, kernels, inputFFT(200)));
+	}
+
+	@Test
+	public void testKernelFFTEviction() {
+		GaborKernelCache.clear();
+		long defaultMaxBytes = GaborKernelCache.maxKernelFFTBytes();
+		try {
+			List<Img<ComplexFloatType>> a = GaborKernelCache.kernelFFTs(parameters, kernels, inputFFT(20));
+			GaborKernelCache.setMaxKernelFFTBytes(GaborKernelCache.kernelFFTBytes());
+			List<Img<ComplexFloatType>> b = GaborKernelCache.kernelFFTs(parameters, kernels, inputFFT(10));
+			assertTrue(GaborKernelCache.kernelFFTBytes() <= GaborKernelCache.maxKernelFFTBytes());
+			assertSame(b, GaborKernelCache.kernelFFTs(parameters, kernels, inputFFT(10)));
+			assertNotSame(a, GaborKernelCache.kernelFFTs(parameters, kernels, inputFFT(20)));
+			GaborKernelCache.setMaxKernelFFTBytes(0);
+			assertEquals(0, GaborKernelCache.kernelFFTBytes());
+		}
+		finally {
+			GaborKernelCache.setMaxKernelFFTBytes(defaultMaxBytes);
+			GaborKernelCache.clear();
+		}
+	}
+
+	private static InputFFT inputFFT(long size) {
+		Interval interval = new FinalInterval(size, size);
+		RandomAccessibleInterval<FloatType> image = ArrayImgs.floats(size, size);
+		return new InputFFT(Views.extendBorder(image), interval, 0, null);
+	}
+}
@@ -0,0 +1,86 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.gabor;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleBinaryOperator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SteerableBasis}.
+ *
+ * @author Matthias Arzt
+ */
+public class SteerableBasisTest {
+
+	private static final int RADIUS = 6;
+
+	@Test
+	public void testGaussDerivativeIsSteerable() {
+		// NB: A rotated derivative of a gaussian is a linear combination of
+		// the derivatives in X and Y.
+		List<RandomAccessibleInterval<FloatType>> kernels = rotatedKernels(10, (x, y) -> x * Math.exp(-0.5 * (x * x + y * y) / 4));
+		SteerableBasis basis = SteerableBasis.of(kernels, 0.01);
+		assertEquals(2, basis.kernels().size());
+		assertEquals(0, basis.errorBound(), 1e-5);
+	}
+
+	@Test
+	public void testErrorBound() {
+		List<RandomAccessibleInterval<FloatType>> kernels = rotatedKernels(10,
+				(x, y) -> Math.exp(-0.5 * (x * x + 16 * y * y) / 4) * Math.cos(x));
+		SteerableBasis basis = SteerableBasis.of(kernels, 0.1);
+		assertTrue(basis.kernels().size() < kernels.size());
+		float[][] coefficients = basis.coefficients();
+		Random random = new Random(42);
+		for (int repetition = 0; repetition < 20; repetition++) {
+			float[] patch = new float[(2 * RADIUS + 1) * (2 * RADIUS + 1)];
+			for (int i = 0; i < patch.length; i++)
+				patch[i] = random.nextFloat();
+			for (int a = 0; a < kernels.size(); a++) {
+				double expected = dot(kernels.get(a), patch);
+				double actual = 0;
+				for (int j = 0; j < basis.kernels().size(); j++)
+					actual += coefficients[a][j] * dot(basis.kernels().get(j), patch);
+				assertEquals(expected, actual, basis.errorBound() + 1e-5);
+			}
+		}
+	}
+
+	private static List<RandomAccessibleInterval<FloatType>> rotatedKernels(int nAngles, DoubleBinaryOperator function) {
+		List<RandomAccessibleInterval<FloatType>> kernels = new ArrayList<>();
+		for (int a = 0; a < nAngles; a++) {
+			double theta = Math.PI / nAngles * a;
+			RandomAccessibleInterval<FloatType> kernel = Views.translate(
+					ArrayImgs.floats(2 * RADIUS + 1, 2 * RADIUS + 1), -RADIUS, -RADIUS);
+			Cursor<FloatType> cursor = Views.flatIterable(kernel).localizingCursor();
+			while (cursor.hasNext()) {
+				cursor.fwd();
+				double x = cursor.getDoublePosition(0);
+				double y = cursor.getDoublePosition(1);
+				double xPrime = x * Math.cos(theta) + y * Math.sin(theta);
+				double yPrime = y * Math.cos(theta) - x * Math.sin(theta);
+				cursor.get().setReal(function.applyAsDouble(xPrime, yPrime));
+			}
+			kernels.add(kernel);
+		}
+		return kernels;
+	}
+
+	private static double dot(RandomAccessibleInterval<FloatType> kernel, float[] patch) {
+		Cursor<FloatType> cursor = Views.flatIterable(kernel).cursor();
+		double sum = 0;
+		for (float value : patch)
+			sum += cursor.next().getRealDouble() * value;
+		return sum;
+	}
+}
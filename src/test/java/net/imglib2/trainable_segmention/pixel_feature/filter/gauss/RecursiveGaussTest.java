@@ -0,0 +1,75 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.gauss;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.img.Img;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.trainable_segmention.RevampUtils;
+import net.imglib2.trainable_segmention.Utils;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link RecursiveGauss}
+ *
+ * @author Matthias Arzt
+ */
+public class RecursiveGaussTest {
+
+	private final Img<FloatType> image = ImageJFunctions.convertFloat(Utils.loadImage("bridge.png"));
+
+	@Test
+	public void testSmallSigma() {
+		testSigma(1.0);
+	}
+
+	@Test
+	public void testMediumSigma() {
+		testSigma(3.0);
+	}
+
+	@Test
+	public void testLargeSigma() {
+		testSigma(8.0);
+	}
+
+	@Test
+	public void test3d() {
+		Img<FloatType> image3d = Utils.ops().create().img(new FinalInterval(40, 40, 40), new FloatType());
+		Random random = new Random(42);
+		image3d.forEach(pixel -> pixel.set(random.nextFloat() * 100));
+		RandomAccessible<FloatType> extended = Views.extendBorder(image3d);
+		Interval interval = new FinalInterval(new long[] { 10, 5, 10 }, new long[] { 29, 34, 29 });
+		Utils.assertImagesEqual(35, gauss3(extended, interval, 4.0),
+				RecursiveGauss.gauss(Utils.ops(), extended, interval, 4.0));
+	}
+
+	@Test
+	public void testInterval() {
+		RandomAccessible<FloatType> extended = Views.extendBorder(image);
+		Interval interval = new FinalInterval(new long[] { 50, 20 }, new long[] { 99, 59 });
+		RandomAccessibleInterval<FloatType> result = RecursiveGauss.gauss(Utils.ops(), extended, interval, 2.0);
+		assertTrue(Intervals.equals(interval, result));
+	}
+
+	private void testSigma(double sigma) {
+		RandomAccessible<FloatType> extended = Views.extendBorder(image);
+		Utils.assertImagesEqual(35, gauss3(extended, image, sigma),
+				RecursiveGauss.gauss(Utils.ops(), extended, image, sigma));
+	}
+
+	private static RandomAccessibleInterval<FloatType> gauss3(RandomAccessible<FloatType> input, Interval interval, double sigma) {
+		RandomAccessibleInterval<FloatType> expected = Utils.ops().create().img(interval, new FloatType());
+		RevampUtils.wrapException(() -> Gauss3.gauss(sigma, input, expected));
+		return expected;
+	}
+}
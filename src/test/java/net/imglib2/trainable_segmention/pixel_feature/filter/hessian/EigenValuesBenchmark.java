@@ -0,0 +1,54 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.hessian;
+
+import java.util.Random;
+
+/**
+ * Compares the run time of the scalar and the batch eigenvalue methods of
+ * {@link EigenValues}, for 2^20 random symmetric 3x3 matrices, including
+ * abs and sort. Run the main method, the first repetitions are warm up.
+ * <p>
+ * Both took about 300 to 350 ms per repetition on a Linux machine, the batch
+ * methods give no measurable speed-up, as Math.acos and Math.cos dominate
+ * the run time.
+ *
+ * @author Matthias Arzt
+ */
+public class EigenValuesBenchmark {
+
+	private static final int SIZE = 1 << 20;
+
+	private static final int REPETITIONS = 10;
+
+	public static void main(String... args) {
+		Random random = new Random(42);
+		float[][] a = new float[6][SIZE];
+		for (float[] component : a)
+			for (int i = 0; i < SIZE; i++)
+				component[i] = (float) random.nextGaussian();
+		float[][] scalar = new float[3][SIZE];
+		float[][] batch = new float[3][SIZE];
+		for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+			long start = System.nanoTime();
+			scalar(a, scalar);
+			long scalarTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			EigenValues.eigenvalues(a[0], a[1], a[2], a[3], a[4], a[5], batch[0], batch[1], batch[2]);
+			EigenValues.abs(batch);
+			EigenValues.sort(batch[0], batch[1], batch[2]);
+			long batchTime = System.nanoTime() - start;
+			System.out.printf("scalar: %.1f ms, batch: %.1f ms%n", scalarTime * 1e-6, batchTime * 1e-6);
+		}
+	}
+
+	private static void scalar(float[][] a, float[][] result) {
+		EigenValues.Vector3D v = new EigenValues.Vector3D();
+		for (int i = 0; i < SIZE; i++) {
+			EigenValues.eigenvalues(v, a[0][i], a[1][i], a[2][i], a[3][i], a[4][i], a[5][i]);
+			EigenValues.abs(v);
+			EigenValues.sort(v);
+			result[0][i] = (float) v.x;
+			result[1][i] = (float) v.y;
+			result[2][i] = (float) v.z;
+		}
+	}
+}
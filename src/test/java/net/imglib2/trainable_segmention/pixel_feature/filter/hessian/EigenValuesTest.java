@@ -0,0 +1,90 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.hessian;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link EigenValues}.
+ *
+ * @author Matthias Arzt
+ */
+public class EigenValuesTest {
+
+	private static final int SIZE = 1000;
+
+	@Test
+	public void testBatchEqualsScalar() {
+		float[][] a = randomMatrices(SIZE, 6, 42);
+		float[][] expected = scalarEigenValues(a);
+		float[][] actual = new float[3][SIZE];
+		EigenValues.eigenvalues(a[0], a[1], a[2], a[3], a[4], a[5], actual[0], actual[1], actual[2]);
+		EigenValues.abs(actual);
+		EigenValues.sort(actual[0], actual[1], actual[2]);
+		for (int i = 0; i < 3; i++)
+			assertArrayEquals(expected[i], actual[i], 0);
+	}
+
+	@Test
+	public void testBatchDouble() {
+		double[] a11 = { 2, 1 }, a12 = { 0, 0 }, a13 = { 0, 0 }, a22 = { 3, 1 }, a23 = { 0, 0 }, a33 = { 1, 1 };
+		double[] x = new double[2], y = new double[2], z = new double[2];
+		EigenValues.eigenvalues(a11, a12, a13, a22, a23, a33, x, y, z);
+		EigenValues.sort(x, y, z);
+		assertArrayEquals(new double[] { 3, 0 }, x, 1e-10);
+		assertArrayEquals(new double[] { 2, 0 }, y, 1e-10);
+		assertArrayEquals(new double[] { 1, 0 }, z, 1e-10);
+	}
+
+	@Test
+	public void test2D() {
+		// NB: The matrix [[2, 1], [1, 2]] has the eigenvalues 3 and 1.
+		float[] x = new float[1], y = new float[1];
+		EigenValues.eigenvalues(new float[] { 2 }, new float[] { 1 }, new float[] { 2 }, x, y);
+		assertEquals(3, x[0], 1e-6);
+		assertEquals(1, y[0], 1e-6);
+	}
+
+	@Test
+	public void test2DEquals3D() {
+		float[][] a = randomMatrices(SIZE, 3, 7);
+		float[] zeros = new float[SIZE];
+		float[][] expected = new float[3][SIZE];
+		EigenValues.eigenvalues(a[0], a[1], zeros, a[2], zeros, zeros, expected[0], expected[1], expected[2]);
+		EigenValues.abs(expected);
+		EigenValues.sort(expected[0], expected[1], expected[2]);
+		float[][] actual = new float[2][SIZE];
+		EigenValues.eigenvalues(a[0], a[1], a[2], actual[0], actual[1]);
+		EigenValues.abs(actual);
+		EigenValues.sort(actual[0], actual[1]);
+		assertArrayEquals(expected[0], actual[0], 1e-4f);
+		assertArrayEquals(expected[1], actual[1], 1e-4f);
+	}
+
+	private static float[][] randomMatrices(int size, int components, long seed) {
+		Random random = new Random(seed);
+		float[][] a = new float[components][size];
+		for (float[] component : a)
+			for (int i = 0; i < size; i++)
+				component[i] = (float) random.nextGaussian();
+		return a;
+	}
+
+	private static float[][] scalarEigenValues(float[][] a) {
+		int size = a[0].length;
+		float[][] result = new float[3][size];
+		EigenValues.Vector3D v = new EigenValues.Vector3D();
+		for (int i = 0; i < size; i++) {
+			EigenValues.eigenvalues(v, a[0][i], a[1][i], a[2][i], a[3][i], a[4][i], a[5][i]);
+			EigenValues.abs(v);
+			EigenValues.sort(v);
+			result[0][i] = (float) v.x;
+			result[1][i] = (float) v.y;
+			result[2][i] = (float) v.z;
+		}
+		return result;
+	}
+}
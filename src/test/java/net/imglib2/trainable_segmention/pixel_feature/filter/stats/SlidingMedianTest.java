@@ -0,0 +1,139 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.stats;
+
+import net.imagej.ops.Ops;
+import net.imagej.ops.special.computer.Computers;
+import net.imagej.ops.special.computer.UnaryComputerOp;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.trainable_segmention.Utils;
+import net.imglib2.trainable_segmention.pixel_feature.calculator.FeatureCalculator;
+import net.imglib2.trainable_segmention.pixel_feature.filter.SingleFeatures;
+import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSettings;
+import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SlidingMedian} and {@link SphereRuns}.
+ *
+ * @author Matthias Arzt
+ */
+public class SlidingMedianTest {
+
+	private final Img<FloatType> image = ImageJFunctions.convertFloat(Utils.loadImage("bridge.png"));
+
+	@Test
+	public void testNumPixels() {
+		for (int radius : new int[] { 1, 3, 8 })
+			for (int n : new int[] { 2, 3 }) {
+				long[] dimensions = new long[n];
+				Arrays.fill(dimensions, 1);
+				Neighborhood<FloatType> neighborhood = new HyperSphereShape(radius)
+						.neighborhoodsRandomAccessible(Views.extendBorder(ArrayImgs.floats(dimensions))).randomAccess().get();
+				assertEquals(neighborhood.size(), new SphereRuns(radius, n).numPixels());
+			}
+	}
+
+	@Test
+	public void testBlocks() {
+		SphereRuns runs = new SphereRuns(2, 3);
+		Interval output = new FinalInterval(new long[] { 1, 2, 3 }, new long[] { 10, 11, 40 });
+		List<Interval> blocks = runs.blocks(output, 2000);
+		long slices = 0;
+		for (Interval block : blocks) {
+			assertTrue(Intervals.numElements(Intervals.expand(block, 2)) <= 2000);
+			assertTrue(Intervals.contains(output, block));
+			slices += block.dimension(2);
+		}
+		assertEquals(output.dimension(2), slices);
+		assertEquals(1, runs.blocks(output, Long.MAX_VALUE).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLarge() {
+		new SphereRuns(1, 2).blocks(new FinalInterval(1L << 31, 10), SphereRuns.MAX_BLOCK_VOXELS);
+	}
+
+	@Test
+	public void testMedian2d() {
+		Interval interval = new FinalInterval(new long[] { 20, 30 }, new long[] { 80, 70 });
+		testMedian(Views.extendBorder(image), interval, 4);
+	}
+
+	@Test
+	public void testMedian3d() {
+		Img<FloatType> image = randomImage(20, 15, 10);
+		Interval interval = new FinalInterval(new long[] { 2, 3, 1 }, new long[] { 17, 12, 8 });
+		testMedian(Views.extendBorder(image), interval, 2);
+	}
+
+	@Test
+	public void testQuantized() {
+		RandomAccessible<FloatType> input = Views.extendBorder(randomImage(300, 300));
+		Interval interval = new FinalInterval(300, 300);
+		RandomAccessibleInterval<FloatType> expected = Utils.ops().create().img(interval, new FloatType());
+		SlidingMedian.calculate(input, expected, new SphereRuns(3, 2), true);
+		RandomAccessibleInterval<FloatType> result = Utils.ops().create().img(interval, new FloatType());
+		SlidingMedian.calculate(input, result, new SphereRuns(3, 2), false);
+		Utils.assertImagesEqual(80, expected, result);
+	}
+
+	@Test
+	public void testRound() {
+		assertEquals(65535, SlidingMedian.round(65535), 0);
+		assertEquals(-1000, SlidingMedian.round(-1000), 0);
+		float value = 0.1f;
+		float rounded = SlidingMedian.round(value);
+		assertTrue(rounded <= value && value - rounded < value * 0x1p-15f);
+	}
+
+	@Test
+	public void testTiledEqualsUntiled() {
+		// NB: The image has more than 65536 distinct values, but each tile has less.
+		Img<FloatType> image = randomImage(400, 400);
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				SingleFeatures.sphereOperation(3, SingleSphereShapedFeature.MEDIAN));
+		FeatureCalculator calculator = new FeatureCalculator(Utils.ops(), settings);
+		RandomAccessibleInterval<FloatType> untiled = calculator.apply(image);
+		calculator.setTileSize(100, 100);
+		Utils.assertImagesEqual(untiled, calculator.apply(image));
+	}
+
+	private void testMedian(RandomAccessible<FloatType> input, Interval interval, int radius) {
+		RandomAccessibleInterval<FloatType> expected = Utils.ops().create().img(interval, new FloatType());
+		UnaryComputerOp<Iterable, DoubleType> median = Computers.unary(Utils.ops(), Ops.Stats.Median.class, DoubleType.class, Iterable.class);
+		RandomAccessible<Neighborhood<FloatType>> neighborhoods = new HyperSphereShape(radius).neighborhoodsRandomAccessible(input);
+		DoubleType tmp = new DoubleType();
+		Views.interval(Views.pair(neighborhoods, expected), expected).forEach(p -> {
+			median.compute(p.getA(), tmp);
+			p.getB().set(tmp.getRealFloat());
+		});
+		RandomAccessibleInterval<FloatType> result = Utils.ops().create().img(interval, new FloatType());
+		SlidingMedian.calculate(input, result, new SphereRuns(radius, interval.numDimensions()), false);
+		Utils.assertImagesEqual(expected, result);
+	}
+
+	private static Img<FloatType> randomImage(long... dimensions) {
+		Img<FloatType> image = ArrayImgs.floats(dimensions);
+		Random random = new Random(42);
+		image.forEach(pixel -> pixel.set(random.nextFloat()));
+		return image;
+	}
+}
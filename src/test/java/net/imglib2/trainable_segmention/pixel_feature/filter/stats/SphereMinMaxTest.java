@@ -0,0 +1,68 @@
+package net.imglib2.trainable_segmention.pixel_feature.filter.stats;
+
+import net.imagej.ops.Op;
+import net.imagej.ops.Ops;
+import net.imagej.ops.special.computer.Computers;
+import net.imagej.ops.special.computer.UnaryComputerOp;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.trainable_segmention.Utils;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests {@link SphereMinMax}.
+ *
+ * @author Matthias Arzt
+ */
+public class SphereMinMaxTest {
+
+	private final Img<FloatType> image = ImageJFunctions.convertFloat(Utils.loadImage("bridge.png"));
+
+	private final Interval interval = new FinalInterval(new long[] { 20, 30 }, new long[] { 80, 70 });
+
+	@Test
+	public void testMax2d() {
+		testOperation(Views.extendBorder(image), interval, 5, true);
+	}
+
+	@Test
+	public void testMin2d() {
+		testOperation(Views.extendBorder(image), interval, 16, false);
+	}
+
+	@Test
+	public void testMax3d() {
+		Img<FloatType> image = ArrayImgs.floats(20, 15, 10);
+		Random random = new Random(42);
+		image.forEach(pixel -> pixel.set((float) random.nextGaussian()));
+		Interval interval = new FinalInterval(new long[] { 2, 3, 1 }, new long[] { 17, 12, 8 });
+		testOperation(Views.extendBorder(image), interval, 3, true);
+	}
+
+	private void testOperation(RandomAccessible<FloatType> input, Interval interval, int radius, boolean max) {
+		Class<? extends Op> opClass = max ? Ops.Stats.Max.class : Ops.Stats.Min.class;
+		UnaryComputerOp<Iterable, DoubleType> computer = Computers.unary(Utils.ops(), opClass, DoubleType.class, Iterable.class);
+		RandomAccessibleInterval<FloatType> expected = Utils.ops().create().img(interval, new FloatType());
+		RandomAccessible<Neighborhood<FloatType>> neighborhoods = new HyperSphereShape(radius).neighborhoodsRandomAccessible(input);
+		DoubleType tmp = new DoubleType();
+		Views.interval(Views.pair(neighborhoods, expected), expected).forEach(p -> {
+			computer.compute(p.getA(), tmp);
+			p.getB().set(tmp.getRealFloat());
+		});
+		RandomAccessibleInterval<FloatType> result = Utils.ops().create().img(interval, new FloatType());
+		SphereMinMax.calculate(input, result, new SphereRuns(radius, interval.numDimensions()), max);
+		Utils.assertImagesEqual(expected, result);
+	}
+}
@@ -0,0 +1,66 @@
+package net.imglib2.trainable_segmention.utils;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.trainable_segmention.Utils;
+import net.imglib2.trainable_segmention.pixel_feature.calculator.FeatureCalculator;
+import net.imglib2.trainable_segmention.pixel_feature.filter.GroupedFeatures;
+import net.imglib2.trainable_segmention.pixel_feature.settings.FeatureSettings;
+import net.imglib2.trainable_segmention.pixel_feature.settings.GlobalSettings;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Tests {@link MappedOutputFactory}
+ *
+ * @author Matthias Arzt
+ */
+public class MappedOutputFactoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCreate() {
+		OutputFactory factory = new MappedOutputFactory(folder.getRoot().toPath());
+		Interval interval = new FinalInterval(new long[] { 10, 20 }, new long[] { 19, 24 });
+		Img<UnsignedShortType> img = factory.create(interval, new UnsignedShortType());
+		assertTrue(Intervals.equals(interval, img));
+		int[] i = { 0 };
+		img.forEach(pixel -> pixel.set(i[0]++));
+		i[0] = 0;
+		img.forEach(pixel -> assertEquals(i[0]++, pixel.get()));
+	}
+
+	@Test
+	public void testFilesDeleted() {
+		assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+		OutputFactory factory = new MappedOutputFactory(folder.getRoot().toPath());
+		Img<FloatType> img = factory.create(new FinalInterval(10, 10), new FloatType());
+		img.forEach(pixel -> pixel.set(42));
+		assertEquals(0, folder.getRoot().list().length);
+		img.forEach(pixel -> assertEquals(42, pixel.get(), 0));
+	}
+
+	@Test
+	public void testFeatureCalculator() {
+		FeatureSettings settings = new FeatureSettings(GlobalSettings.default2dSettings(),
+				GroupedFeatures.gauss(), GroupedFeatures.hessian());
+		FeatureCalculator calculator = new FeatureCalculator(Utils.ops(), settings);
+		Img<FloatType> input = ImageJFunctions.convertFloat(Utils.loadImage("nuclei.tif"));
+		RandomAccessibleInterval<FloatType> expected = calculator.apply(input);
+		calculator.setOutputFactory(new MappedOutputFactory(folder.getRoot().toPath()));
+		Utils.assertImagesEqual(expected, calculator.apply(input));
+	}
+}